@@ -0,0 +1,76 @@
+#!/usr/bin/env bash
+# Замеряет время от запуска приложения до первого обработанного обновления (webhook ответил 200):
+# обычный jar против распакованного jar с архивом AppCDS (см. профили cds и aot в pom.xml).
+#
+#   ./mvnw -P cds package -DskipTests          # или -P cds,aot и AOT=true
+#   scripts/startup-benchmark.sh [jar] [cds]
+#
+# Переменные: RUNS (запусков на режим, по умолчанию 5), PORT (по умолчанию 18080), AOT (true — запускать с AOT-кодом).
+set -euo pipefail
+cd "$(dirname "$0")/.."
+
+RUNS=${RUNS:-5}
+PORT=${PORT:-18080}
+AOT=${AOT:-false}
+UPDATE='{"update_id":1,"message":{"message_id":1,"chat":{"id":1},"text":"/start",
+"entities":[{"offset":0,"length":6,"type":"bot_command"}]}}'
+
+# Один запуск: печатает миллисекунды до первого ответа 200 на /webhook
+run_once() {
+    local data_dir start end pid
+    data_dir=$(mktemp -d)
+    start=$(date +%s%N)
+    # Ответы бота уходят на закрытый порт: отправка сразу падает, но обновление считается обработанным
+    java -Dserver.port="$PORT" -Dbot.ingress=webhook -Dbot.token=benchmark \
+        -Dbot.api-url=http://127.0.0.1:9 -Dbot.data-dir="$data_dir" "$@" >/dev/null 2>&1 &
+    pid=$!
+    until curl -sf -o /dev/null -X POST -H 'Content-Type: application/json' -d "$UPDATE" \
+            "http://127.0.0.1:$PORT/webhook"; do
+        if ! kill -0 "$pid" 2>/dev/null; then
+            echo "Application exited before handling an update" >&2
+            return 1
+        fi
+        if (( $(date +%s%N) - start > 120000000000 )); then
+            echo "No update handled within 120 s" >&2
+            kill "$pid"
+            return 1
+        fi
+        sleep 0.01
+    done
+    end=$(date +%s%N)
+    kill "$pid"
+    wait "$pid" 2>/dev/null || true
+    rm -rf "$data_dir"
+    echo $(( (end - start) / 1000000 ))
+}
+
+benchmark() {
+    local mode=$1
+    shift
+    local times=()
+    for _ in $(seq "$RUNS"); do
+        times+=("$(run_once "$@")")
+    done
+    local sorted
+    sorted=$(printf '%s\n' "${times[@]}" | sort -n | tr '\n' ' ')
+    echo "$mode: median $(printf '%s\n' "${times[@]}" | sort -n | sed -n "$(( (RUNS + 1) / 2 ))p") ms ($sorted)"
+}
+
+modes=("$@")
+[ ${#modes[@]} -eq 0 ] && modes=(jar cds)
+for mode in "${modes[@]}"; do
+    case $mode in
+        jar)
+            jar=$(ls target/stepbot-*.jar | grep -v '\.original$' | head -n 1)
+            benchmark jar -jar "$jar"
+            ;;
+        cds)
+            benchmark cds -XX:SharedArchiveFile=target/cds/stepbot.jsa -Xlog:cds=off -Xlog:cds+dynamic=off \
+                -Dspring.aot.enabled="$AOT" -jar target/cds/stepbot.jar
+            ;;
+        *)
+            echo "Unknown mode: $mode (expected jar or cds)" >&2
+            exit 1
+            ;;
+    esac
+done
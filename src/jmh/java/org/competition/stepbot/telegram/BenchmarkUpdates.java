@@ -0,0 +1,51 @@
+package org.competition.stepbot.telegram;
+
+import org.competition.stepbot.telegram.dto.Chat;
+import org.competition.stepbot.telegram.dto.Message;
+import org.competition.stepbot.telegram.dto.MessageEntity;
+import org.competition.stepbot.telegram.dto.Update;
+import org.competition.stepbot.telegram.dto.User;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Обновления, похожие на те, что присылает <i>Telegram</i>: простой текст, команда, команда с множеством
+ * упоминаний и сообщение максимальной длины.</p>
+ */
+final class BenchmarkUpdates {
+    static final long CHAT_ID = 100;
+
+    private BenchmarkUpdates() {
+    }
+
+    static Update of(String kind) {
+        return switch (kind) {
+            case "plain" -> update("Сегодня прошёл   10 000 шагов, завтра будет больше!", List.of());
+            case "command" -> update("/start", List.of(new MessageEntity(0, 6, "bot_command")));
+            case "mentions" -> mentions(20);
+            case "long" -> update("/start " + "шаги и ещё шаги ".repeat(256).substring(0, 4089),
+                    List.of(new MessageEntity(0, 6, "bot_command")));
+            default -> throw new IllegalArgumentException("Unknown update kind: " + kind);
+        };
+    }
+
+    /// Команда, за которой идут count упоминаний пользователей
+    private static Update mentions(int count) {
+        StringBuilder text = new StringBuilder("/start");
+        List<MessageEntity> entities = new ArrayList<>();
+        entities.add(new MessageEntity(0, 6, "bot_command"));
+        for (int i = 0; i < count; i++) {
+            text.append(' ');
+            String mention = "@participant_" + i;
+            entities.add(new MessageEntity(text.length(), mention.length(), "mention"));
+            text.append(mention);
+        }
+        return update(text.toString(), entities);
+    }
+
+    private static Update update(String text, List<MessageEntity> entities) {
+        return new Update(1, new Message(1, text, new Chat(CHAT_ID), entities,
+                new User(CHAT_ID, "participant")));
+    }
+}
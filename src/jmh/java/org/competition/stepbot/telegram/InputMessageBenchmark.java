@@ -0,0 +1,40 @@
+package org.competition.stepbot.telegram;
+
+import org.competition.stepbot.telegram.dto.Update;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/// Разбор обновления в {@link InputMessage} (проверки, нормализация текста, команда и упоминания)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InputMessageBenchmark {
+    @Param({"plain", "command", "mentions", "long"})
+    String kind;
+
+    private Update update;
+
+    @Setup
+    public void setup() {
+        update = BenchmarkUpdates.of(kind);
+    }
+
+    @Benchmark
+    public InputMessage parse() {
+        return InputMessage.of(update);
+    }
+}
@@ -0,0 +1,75 @@
+package org.competition.stepbot.telegram;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.competition.stepbot.metrics.BotMetrics;
+import org.competition.stepbot.telegram.commands.BlockingCommandExecutor;
+import org.competition.stepbot.telegram.commands.CommandRegistry;
+import org.competition.stepbot.telegram.commands.Start;
+import org.competition.stepbot.telegram.dto.Update;
+import org.competition.stepbot.telegram.state.InMemoryStateStore;
+import org.competition.stepbot.telegram.state.SessionExpiry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import reactor.core.publisher.Mono;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Обработка обновления целиком ({@link MessageHandler#handleUpdate}): разбор, очередь чата, поиск и выполнение
+ * команды и отправка ответа. Вместо запроса к <i>Telegram</i>'у ответ сразу считается доставленным.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageHandlerBenchmark {
+    @Param({"plain", "command", "mentions"})
+    String kind;
+
+    private Update update;
+    private MessageHandler messageHandler;
+
+    /// {@link TelegramBot}, который не обращается к <i>Telegram</i>'у
+    private static class StubTelegramBot extends TelegramBot {
+        StubTelegramBot(BotMetrics metrics) {
+            super(TestOutboundDispatcher.create(), metrics, "http://localhost", "token");
+        }
+
+        @Override
+        public Mono<MessageInfo> sendMessage(long chatId, String text) {
+            return Mono.just(new MessageInfo(text, chatId, 1));
+        }
+    }
+
+    @Setup
+    public void setup() {
+        update = BenchmarkUpdates.of(kind);
+        BotMetrics metrics = new BotMetrics(new SimpleMeterRegistry());
+        TelegramBot telegramBot = new StubTelegramBot(metrics);
+        InMemoryStateStore stateStore = new InMemoryStateStore();
+        ChatMailboxes chatMailboxes = new ChatMailboxes(16, ChatMailboxes.OverflowPolicy.REJECT_NEW);
+        messageHandler = new MessageHandler(
+                new CommandRegistry(List.of(new Start(telegramBot)), ""), stateStore, telegramBot, chatMailboxes,
+                new SessionExpiry(stateStore, chatMailboxes, telegramBot, Duration.ofMinutes(30), 1000, 512, true),
+                metrics, new BlockingCommandExecutor(4), new UsernameIndex(10_000, Path.of("target")));
+    }
+
+    @Benchmark
+    public void handleUpdate() {
+        messageHandler.handleUpdate(update).block();
+    }
+}
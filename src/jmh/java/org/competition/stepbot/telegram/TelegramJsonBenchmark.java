@@ -0,0 +1,76 @@
+package org.competition.stepbot.telegram;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.competition.stepbot.metrics.BotMetrics;
+import org.competition.stepbot.telegram.dto.Update;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientResponse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.competition.stepbot.Values.JSON_MAPPER;
+
+/**
+ * <p>Работа с JSON на пути каждого обновления: привязка тела webhook'а к {@link Update} и разбор ответа
+ * <i>Telegram</i>'а на <code>sendMessage</code> ({@link TelegramBot#responseHandler}).</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TelegramJsonBenchmark {
+    private static final String UPDATE_JSON = """
+            {"update_id":123456789,"message":{"message_id":42,"date":1700000000,
+            "from":{"id":100,"is_bot":false,"first_name":"Иван","username":"ivan","language_code":"ru"},
+            "chat":{"id":100,"first_name":"Иван","username":"ivan","type":"private"},
+            "text":"/start @participant_1 @participant_2","entities":[{"offset":0,"length":6,"type":"bot_command"},
+            {"offset":7,"length":14,"type":"mention"},{"offset":22,"length":14,"type":"mention"}]}}""";
+    private static final String SEND_MESSAGE_RESPONSE = """
+            {"ok":true,"result":{"message_id":43,"date":1700000001,
+            "from":{"id":1,"is_bot":true,"first_name":"StepBot","username":"step_bot"},
+            "chat":{"id":100,"first_name":"Иван","username":"ivan","type":"private"},
+            "text":"Привет! Это проверка команд."}}""";
+
+    private byte[] updateBody;
+    private ObjectReader updateReader;
+    private TelegramBot telegramBot;
+
+    @Setup
+    public void setup() {
+        updateBody = UPDATE_JSON.getBytes(StandardCharsets.UTF_8);
+        updateReader = JSON_MAPPER.readerFor(Update.class);
+        telegramBot = new TelegramBot(TestOutboundDispatcher.create(),
+                new BotMetrics(new SimpleMeterRegistry()), "http://localhost", "token");
+    }
+
+    @Benchmark
+    public Update bindUpdate() throws IOException {
+        return updateReader.readValue(updateBody);
+    }
+
+    @Benchmark
+    public MessageInfo parseSendMessageResponse() {
+        ClientResponse response = ClientResponse.create(HttpStatus.OK)
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .body(SEND_MESSAGE_RESPONSE)
+                .build();
+        return telegramBot.responseHandler(response, TelegramBot.MESSAGE_RESPONSE).map(TelegramBot::toMessageInfo).block();
+    }
+}
@@ -0,0 +1,107 @@
+package org.competition.stepbot.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerResponse;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.competition.stepbot.Values.JSON_MAPPER;
+
+/**
+ * <p>Локальная заглушка <code>api.telegram.org</code> для нагрузочного теста. На любой метод отвечает как
+ * <code>sendMessage</code> (сообщением с тем же chat_id и текстом), но с задержкой {@code latency} и, с заданной
+ * вероятностью, ошибкой 429 (с <code>retry_after</code>) или 500.</p>
+ */
+class FaultyTelegramStub implements AutoCloseable {
+    private final Duration latency;
+    private final double tooManyRequestsRate;
+    private final double failureRate;
+    private final int retryAfterSeconds;
+    private final DisposableServer server;
+
+    private final LongAdder served = new LongAdder();
+    private final LongAdder tooManyRequests = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final AtomicLong nextMessageId = new AtomicLong();
+
+    FaultyTelegramStub(Duration latency, double tooManyRequestsRate, double failureRate, int retryAfterSeconds) {
+        this.latency = latency;
+        this.tooManyRequestsRate = tooManyRequestsRate;
+        this.failureRate = failureRate;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.server = HttpServer.create()
+                .host("127.0.0.1")
+                .port(0)
+                .route(routes -> routes.post("/bot{token}/{method}", (request, response) -> request.receive()
+                        .aggregate().asString().defaultIfEmpty("{}")
+                        .delayElement(latency)
+                        .flatMap(body -> respond(response, body))))
+                .bindNow();
+    }
+
+    private Mono<Void> respond(HttpServerResponse response, String body) {
+        double roll = ThreadLocalRandom.current().nextDouble();
+        Map<String, Object> envelope;
+        if (roll < tooManyRequestsRate) {
+            tooManyRequests.increment();
+            response.status(429);
+            envelope = Map.of("ok", false, "error_code", 429,
+                    "description", "Too Many Requests: retry after " + retryAfterSeconds,
+                    "parameters", Map.of("retry_after", retryAfterSeconds));
+        } else if (roll < tooManyRequestsRate + failureRate) {
+            failures.increment();
+            response.status(500);
+            envelope = Map.of("ok", false, "error_code", 500, "description", "Internal Server Error");
+        } else {
+            served.increment();
+            JsonNode json = readTree(body);
+            envelope = Map.of("ok", true, "result", Map.of(
+                    "message_id", nextMessageId.incrementAndGet(),
+                    "chat", Map.of("id", json.path("chat_id").asLong()),
+                    "text", json.path("text").asText()));
+        }
+        return response.header("Content-Type", "application/json")
+                .sendString(Mono.fromCallable(() -> JSON_MAPPER.writeValueAsString(envelope)))
+                .then();
+    }
+
+    String url() {
+        return "http://127.0.0.1:" + server.port();
+    }
+
+    Duration latency() {
+        return latency;
+    }
+
+    long served() {
+        return served.sum();
+    }
+
+    long tooManyRequests() {
+        return tooManyRequests.sum();
+    }
+
+    long failures() {
+        return failures.sum();
+    }
+
+    private static JsonNode readTree(String body) {
+        try {
+            return JSON_MAPPER.readTree(body);
+        } catch (Exception e) {
+            return JSON_MAPPER.createObjectNode();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.disposeNow();
+    }
+}
@@ -0,0 +1,175 @@
+package org.competition.stepbot.loadtest;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.competition.stepbot.StepBotApplication;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.competition.stepbot.Values.JSON_MAPPER;
+
+/**
+ * <p>Нагрузочный тест одного экземпляра бота. Запускает заглушку Bot API ({@link FaultyTelegramStub}) и само
+ * приложение, направленное на неё через <code>bot.api-url</code>, а затем отправляет на <code>/webhook</code>
+ * обновления от множества чатов и печатает пропускную способность, задержки (p50/p99/p999) и долю ошибок.</p>
+ *
+ * <p>Запуск: <code>./mvnw -P loadtest test-compile exec:exec -Dloadtest.args="--updates=20000"</code>.
+ * Параметры теста:</p>
+ * <ul>
+ *     <li><code>--chats</code> — количество чатов (по умолчанию 5000);</li>
+ *     <li><code>--updates</code> — количество обновлений (по умолчанию 20000);</li>
+ *     <li><code>--warmup</code> — обновлений для прогрева, которые не учитываются (по умолчанию 2000);</li>
+ *     <li><code>--concurrency</code> — сколько запросов к webhook'у выполняется одновременно (по умолчанию 256);</li>
+ *     <li><code>--latency-ms</code> — задержка ответа заглушки (по умолчанию 50);</li>
+ *     <li><code>--rate-429</code>, <code>--rate-fail</code> — доля ответов 429 и 500 (по умолчанию 0.01 и 0.005);</li>
+ *     <li><code>--retry-after</code> — <code>retry_after</code> в ответах 429, в секундах (по умолчанию 1).</li>
+ * </ul>
+ * <p>Остальные аргументы передаются приложению, например <code>--bot.send.global-rate=1000</code>: по умолчанию
+ * ответы бота ограничены настоящими ограничениями <i>Telegram</i>'а (30 сообщений в секунду).</p>
+ */
+public final class LoadTest {
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(120);
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>(Map.of(
+                "chats", "5000", "updates", "20000", "warmup", "2000", "concurrency", "256",
+                "latency-ms", "50", "rate-429", "0.01", "rate-fail", "0.005", "retry-after", "1"));
+        // Ошибки, которые специально возвращает заглушка, приложение не логирует (иначе замеряется вывод в консоль)
+        Map<String, String> appProperties = new LinkedHashMap<>(Map.of(
+                "server.port", "0", "bot.ingress", "webhook", "bot.token", "load-test", "bot.webhook-secret", "",
+                "logging.level.root", "WARN", "logging.level.org.competition.stepbot", "OFF"));
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --key=value, got " + arg);
+            }
+            String key = arg.substring(2, arg.indexOf('='));
+            (options.containsKey(key) ? options : appProperties).put(key, arg.substring(arg.indexOf('=') + 1));
+        }
+        int chats = Integer.parseInt(options.get("chats"));
+        int updates = Integer.parseInt(options.get("updates"));
+        int warmup = Integer.parseInt(options.get("warmup"));
+        int concurrency = Integer.parseInt(options.get("concurrency"));
+
+        Path dataDir = Files.createTempDirectory("stepbot-loadtest");
+        try (FaultyTelegramStub stub = new FaultyTelegramStub(
+                Duration.ofMillis(Long.parseLong(options.get("latency-ms"))),
+                Double.parseDouble(options.get("rate-429")),
+                Double.parseDouble(options.get("rate-fail")),
+                Integer.parseInt(options.get("retry-after")))) {
+            appProperties.put("bot.api-url", stub.url());
+            appProperties.put("bot.data-dir", dataDir.toString());
+            ConfigurableApplicationContext context = SpringApplication.run(StepBotApplication.class,
+                    appProperties.entrySet().stream().map(e -> "--" + e.getKey() + "=" + e.getValue())
+                            .toArray(String[]::new));
+            try {
+                WebClient webhook = WebClient.create("http://127.0.0.1:"
+                        + context.getEnvironment().getProperty("local.server.port") + "/webhook");
+
+                System.out.printf("Warmup: %d updates%n", warmup);
+                run(webhook, 0, warmup, chats, concurrency);
+                System.out.printf("Load: %d updates from %d chats, concurrency %d, stub latency %s%n",
+                        updates, chats, concurrency, stub.latency());
+                Result result = run(webhook, warmup, updates, chats, concurrency);
+
+                report(result, stub, context.getBean(MeterRegistry.class));
+            } finally {
+                context.close();
+            }
+        }
+        System.exit(0);
+    }
+
+    /**
+     * @param latencies время обработки каждого обновления (нс); у неуспешных — -1
+     */
+    private record Result(long[] latencies, long elapsedNanos, long errors) {
+    }
+
+    /// Отправляет count обновлений с id, начиная с firstUpdateId, и ждёт ответов на все
+    private static Result run(WebClient webhook, int firstUpdateId, int count, int chats, int concurrency) {
+        long[] latencies = new long[count];
+        LongAdder errors = new LongAdder();
+        long start = System.nanoTime();
+        Flux.range(0, count)
+                .flatMap(i -> {
+                    int updateId = firstUpdateId + i;
+                    byte[] body = update(updateId, updateId % chats + 1);
+                    return Mono.defer(() -> {
+                        long sent = System.nanoTime();
+                        return webhook.post()
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .bodyValue(body)
+                                .retrieve()
+                                .toBodilessEntity()
+                                .timeout(REQUEST_TIMEOUT)
+                                .doOnSuccess(ignored -> latencies[i] = System.nanoTime() - sent);
+                    }).onErrorResume(err -> {
+                        latencies[i] = -1;
+                        errors.increment();
+                        return Mono.empty();
+                    });
+                }, concurrency)
+                .blockLast();
+        return new Result(latencies, System.nanoTime() - start, errors.sum());
+    }
+
+    /// Обновление от чата: в основном команда /start, иногда текст без команды (на него бот отвечает ошибкой)
+    private static byte[] update(long updateId, long chatId) {
+        boolean command = updateId % 10 != 0;
+        Map<String, Object> message = command
+                ? Map.of("message_id", updateId, "chat", Map.of("id", chatId), "text", "/start",
+                        "entities", List.of(Map.of("offset", 0, "length", 6, "type", "bot_command")))
+                : Map.of("message_id", updateId, "chat", Map.of("id", chatId), "text", "сколько у меня шагов?");
+        try {
+            return JSON_MAPPER.writeValueAsBytes(Map.of("update_id", updateId, "message", message));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void report(Result result, FaultyTelegramStub stub, MeterRegistry registry) {
+        long[] ok = Arrays.stream(result.latencies()).filter(latency -> latency >= 0).sorted().toArray();
+        int total = result.latencies().length;
+        double seconds = result.elapsedNanos() / 1e9;
+
+        System.out.println();
+        System.out.printf("Throughput:  %.1f updates/s (%d in %.2f s)%n", total / seconds, total, seconds);
+        System.out.printf("Errors:      %d (%.3f%%)%n", result.errors(), 100.0 * result.errors() / total);
+        if (ok.length > 0) {
+            System.out.printf("Latency:     p50 %.1f ms, p99 %.1f ms, p999 %.1f ms, max %.1f ms%n",
+                    percentile(ok, 0.5), percentile(ok, 0.99), percentile(ok, 0.999), ok[ok.length - 1] / 1e6);
+        }
+        System.out.printf("Stub:        %d served, %d x 429, %d x 500%n",
+                stub.served(), stub.tooManyRequests(), stub.failures());
+
+        Map<String, Long> byStatus = new TreeMap<>();
+        for (Timer timer : registry.find("bot.telegram.requests").timers()) {
+            byStatus.merge(timer.getId().getTag("method") + " " + timer.getId().getTag("status"), timer.count(), Long::sum);
+        }
+        System.out.printf("Bot API:     %s%n", byStatus);
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(quantile * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+}
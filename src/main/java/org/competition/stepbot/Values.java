@@ -1,5 +1,6 @@
 package org.competition.stepbot;
 
+import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.experimental.UtilityClass;
 import org.competition.stepbot.telegram.exceptions.ErrorStrBox;
@@ -8,34 +9,57 @@ import org.competition.stepbot.telegram.exceptions.ErrorStrBox;
 @UtilityClass
 public class Values {
 
-    public static final ObjectMapper JSON_MAPPER = new ObjectMapper();
+    /// В ответах <i>Telegram</i>'а гораздо больше полей, чем в наших dto, поэтому неизвестные поля пропускаются
+    public static final ObjectMapper JSON_MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
     public static final String TG_COMMAND_PREFIX = "/";
+    /// Максимальная длина текста сообщения в <i>Telegram</i>'е (в единицах UTF-16)
+    public static final int MAX_MSG_TEXT_LENGTH = 4096;
+    public static final String SESSION_EXPIRED_NOTICE =
+            "Диалог завершён, потому что долго не было ответа. Чтобы начать заново, отправьте команду ещё раз";
     public static final ErrorStrBox NO_COMMAND_BOX = new ErrorStrBox(
             "User sent message without command",
-            "Ошибка: сообщение должно начинаться с команды"
+            "Ошибка: сообщение должно начинаться с команды",
+            "no_command"
+    );
+    public static final ErrorStrBox COMMAND_FOR_OTHER_BOT = new ErrorStrBox(
+            "User sent a command addressed to another bot",
+            "",
+            "other_bot"
+    );
+    public static final ErrorStrBox TOO_MANY_MESSAGES = new ErrorStrBox(
+            "User sent too many messages in a row",
+            "Ошибка: слишком много сообщений подряд. Дождитесь ответа и повторите отправку",
+            "too_many_messages"
     );
     public static final ErrorStrBox UNKNOWN_ERR = new ErrorStrBox(
             "Unknown error while creating InputMessage: ",
-            "Возникла неизвестная ошибка при обработке вашего сообщения"
+            "Возникла неизвестная ошибка при обработке вашего сообщения",
+            "unknown"
     );
     public static final ErrorStrBox NO_MSG_TEXT = new ErrorStrBox(
             "User sent null text",
-            "Ошибка: не смог получить ваше сообщение. Проверьте его и повторите отправку"
+            "Ошибка: не смог получить ваше сообщение. Проверьте его и повторите отправку",
+            "no_text"
     );
     public static final ErrorStrBox EMPTY_MSG_TEXT = new ErrorStrBox(
         "User sent empty text",
-        "Ошибка: получил пустое сообщение. Проверьте его и повторите отправку"
+        "Ошибка: получил пустое сообщение. Проверьте его и повторите отправку",
+        "empty_text"
     );
     public static final ErrorStrBox MSG_TEXT_TOO_LONG = new ErrorStrBox(
             "User sent too long text",
-            "Ошибка: вы отправляете слишком длинное сообщение"
+            "Ошибка: вы отправляете слишком длинное сообщение",
+            "text_too_long"
     );
     public static final ErrorStrBox TOO_MANY_COMMANDS = new ErrorStrBox(
             "User sent more than 1 command",
-            "Ошибка: в сообщении не может быть больше двух команд"
+            "Ошибка: в сообщении не может быть больше двух команд",
+            "too_many_commands"
     );
     public static final ErrorStrBox MSG_TEXT_DOES_NOT_START_WITH_COMMAND = new ErrorStrBox(
             "User sent a message that does not start with a command",
-            "Ошибка: команда должна находиться в начале сообщения"
+            "Ошибка: команда должна находиться в начале сообщения",
+            "command_not_first"
     );
 }
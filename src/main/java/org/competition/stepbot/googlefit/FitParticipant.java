@@ -0,0 +1,8 @@
+package org.competition.stepbot.googlefit;
+
+/**
+ * @param chatId id участника в <i>Telegram</i>'е
+ * @param refreshToken refresh token <i>Google</i>, полученный при авторизации участника
+ */
+public record FitParticipant(long chatId, String refreshToken) {
+}
@@ -0,0 +1,254 @@
+package org.competition.stepbot.googlefit;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static org.competition.stepbot.Values.JSON_MAPPER;
+
+/**
+ * <p>Получение количества шагов участников из <i>Google Fit</i> (Fitness REST API, метод
+ * <code>dataset:aggregate</code>) с разбивкой по дням.</p>
+ *
+ * <p>Участники опрашиваются параллельно, но не больше {@code googlefit.concurrency} одновременно. Временные ошибки
+ * (429, 5xx, сетевые) повторяются с экспоненциальной задержкой со случайным разбросом, а при 401 access token
+ * один раз обновляется по refresh token'у.</p>
+ *
+ * <p>Шаги за прошедшие дни больше не меняются, поэтому запоминаются и повторно не запрашиваются: при следующей
+ * синхронизации запрашиваются только дни после последнего запомненного (обычно только сегодняшний).
+ * День считается завершённым через {@code googlefit.finalize-after} после его окончания, чтобы успели
+ * дойти данные, которые телефон синхронизирует с опозданием.</p>
+ */
+@Slf4j
+@Service
+public class GoogleFitClient {
+    private static final String STEP_DATA_TYPE = "com.google.step_count.delta";
+    private static final String STEP_DATA_SOURCE =
+            "derived:com.google.step_count.delta:com.google.android.gms:estimated_steps";
+    private static final Duration MIN_BACKOFF = Duration.ofMillis(500);
+
+    /// Access token участника и момент, когда он перестанет действовать
+    private record AccessToken(String value, Instant expiresAt) {
+    }
+
+    /// Шаги за завершённые дни подряд, начиная с firstDay (неизменяемые; массив никогда не меняется)
+    private record CachedDays(long firstDay, int[] steps) {
+        long lastDay() {
+            return firstDay + steps.length - 1;
+        }
+    }
+
+    private final WebClient fitClient;
+    private final WebClient tokenClient;
+    private final String clientId;
+    private final String clientSecret;
+    private final ZoneId zone;
+    private final Duration finalizeAfter;
+    private final int concurrency;
+    private final int maxRetries;
+    private final Clock clock;
+
+    private final ConcurrentMap<Long, AccessToken> accessTokens = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, CachedDays> cachedDays = new ConcurrentHashMap<>();
+
+    @Autowired
+    public GoogleFitClient(@Value("${googlefit.api-url:https://www.googleapis.com}") String apiUrl,
+                           @Value("${googlefit.token-url:https://oauth2.googleapis.com/token}") String tokenUrl,
+                           @Value("${googlefit.client-id:}") String clientId,
+                           @Value("${googlefit.client-secret:}") String clientSecret,
+                           @Value("${googlefit.zone:UTC}") ZoneId zone,
+                           @Value("${googlefit.finalize-after:PT2H}") Duration finalizeAfter,
+                           @Value("${googlefit.concurrency:8}") int concurrency,
+                           @Value("${googlefit.max-retries:4}") int maxRetries) {
+        this(apiUrl, tokenUrl, clientId, clientSecret, zone, finalizeAfter, concurrency, maxRetries, Clock.systemUTC());
+    }
+
+    GoogleFitClient(String apiUrl, String tokenUrl, String clientId, String clientSecret, ZoneId zone,
+                    Duration finalizeAfter, int concurrency, int maxRetries, Clock clock) {
+        this.fitClient = WebClient.create(apiUrl);
+        this.tokenClient = WebClient.create(tokenUrl);
+        this.clientId = clientId;
+        this.clientSecret = clientSecret;
+        this.zone = zone;
+        this.finalizeAfter = finalizeAfter;
+        this.concurrency = concurrency;
+        this.maxRetries = maxRetries;
+        this.clock = clock;
+    }
+
+    /**
+     * <p>Получает шаги всех участников за дни с {@code from} по сегодняшний.</p>
+     *
+     * @param participants участники
+     * @param from первый день соревнования
+     * @return шаги каждого участника (участники, для которых шаги получить не удалось, пропускаются)
+     */
+    public Flux<StepsSnapshot> sync(Collection<FitParticipant> participants, LocalDate from) {
+        return Flux.fromIterable(participants)
+                .flatMap(participant -> sync(participant, from)
+                        .onErrorResume(err -> {
+                            log.error("Failed to fetch steps of participant {}: {}", participant.chatId(), err.getMessage());
+                            return Mono.empty();
+                        }), concurrency);
+    }
+
+    /**
+     * <p>Получает шаги участника за дни с {@code from} по сегодняшний. Запрашивает только те дни,
+     * которых ещё нет среди запомненных завершённых дней.</p>
+     *
+     * @param participant участник
+     * @param from первый день
+     * @return шаги участника по дням
+     */
+    public Mono<StepsSnapshot> sync(FitParticipant participant, LocalDate from) {
+        return Mono.defer(() -> {
+            long fromDay = from.toEpochDay();
+            long today = LocalDate.now(clock.withZone(zone)).toEpochDay();
+            // День завершён, если с его конца прошло больше finalizeAfter
+            long lastFinalDay = LocalDate.ofInstant(clock.instant().minus(finalizeAfter), zone).toEpochDay() - 1;
+            if (fromDay > today) { // соревнование ещё не началось
+                return Mono.just(new StepsSnapshot(participant.chatId(), from, new int[0]));
+            }
+
+            CachedDays cached = cachedDays.get(participant.chatId());
+            long fetchFrom = cached != null && cached.firstDay() <= fromDay ? Math.max(fromDay, cached.lastDay() + 1) : fromDay;
+
+            return fetchDays(participant, fetchFrom, today).map(fetched -> {
+                int[] daily = new int[(int) (today - fromDay + 1)];
+                for (long day = fromDay; day <= today; day++) {
+                    daily[(int) (day - fromDay)] = day < fetchFrom
+                            ? cached.steps()[(int) (day - cached.firstDay())]
+                            : fetched.getOrDefault(day, 0);
+                }
+                remember(participant.chatId(), cached, fromDay, daily, lastFinalDay);
+                return new StepsSnapshot(participant.chatId(), from, daily);
+            });
+        });
+    }
+
+    /// Запоминает шаги за завершённые дни (новый массив, старый не меняется)
+    private void remember(long chatId, CachedDays cached, long fromDay, int[] daily, long lastFinalDay) {
+        long first = cached != null && cached.firstDay() <= fromDay ? cached.firstDay() : fromDay;
+        if (lastFinalDay < first) {
+            return;
+        }
+        int[] steps = new int[(int) (lastFinalDay - first + 1)];
+        for (long day = first; day <= lastFinalDay; day++) {
+            steps[(int) (day - first)] = day < fromDay
+                    ? cached.steps()[(int) (day - cached.firstDay())]
+                    : daily[(int) (day - fromDay)];
+        }
+        cachedDays.put(chatId, new CachedDays(first, steps));
+    }
+
+    /**
+     * <p>Запрашивает шаги по дням с повторами: при 401 один раз обновляет access token, при временных ошибках
+     * повторяет запрос с задержкой.</p>
+     *
+     * @return шаги по дням (ключ — {@link LocalDate#toEpochDay()})
+     */
+    private Mono<Map<Long, Integer>> fetchDays(FitParticipant participant, long fromDay, long toDay) {
+        return Mono.defer(() -> accessToken(participant))
+                .flatMap(token -> aggregate(token, fromDay, toDay))
+                .retryWhen(Retry.max(1)
+                        .filter(err -> err instanceof GoogleFitException e && e.isUnauthorized())
+                        .doBeforeRetry(signal -> accessTokens.remove(participant.chatId())))
+                .retryWhen(Retry.backoff(maxRetries, MIN_BACKOFF)
+                        .jitter(0.5)
+                        .filter(GoogleFitClient::isTransient)
+                        .onRetryExhaustedThrow((spec, signal) -> signal.failure()));
+    }
+
+    private static boolean isTransient(Throwable err) {
+        return err instanceof WebClientRequestException
+                || err instanceof GoogleFitException e && e.isRetryable();
+    }
+
+    private Mono<Map<Long, Integer>> aggregate(String accessToken, long fromDay, long toDay) {
+        Map<String, Object> body = Map.of(
+                "aggregateBy", List.of(Map.of("dataTypeName", STEP_DATA_TYPE, "dataSourceId", STEP_DATA_SOURCE)),
+                "bucketByTime", Map.of("period", Map.of("type", "day", "value", 1, "timeZoneId", zone.getId())),
+                "startTimeMillis", LocalDate.ofEpochDay(fromDay).atStartOfDay(zone).toInstant().toEpochMilli(),
+                "endTimeMillis", LocalDate.ofEpochDay(toDay + 1).atStartOfDay(zone).toInstant().toEpochMilli());
+        return fitClient.post()
+                .uri("/fitness/v1/users/me/dataset:aggregate")
+                .headers(headers -> headers.setBearerAuth(accessToken))
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(body)
+                .exchangeToMono(response -> readJson(response).map(this::parseBuckets));
+    }
+
+    /// Достаёт из ответа dataset:aggregate сумму шагов за каждый день
+    private Map<Long, Integer> parseBuckets(JsonNode root) {
+        Map<Long, Integer> days = new HashMap<>();
+        for (JsonNode bucket : root.path("bucket")) {
+            long day = Instant.ofEpochMilli(bucket.path("startTimeMillis").asLong()).atZone(zone).toLocalDate().toEpochDay();
+            int steps = 0;
+            for (JsonNode dataset : bucket.path("dataset")) {
+                for (JsonNode point : dataset.path("point")) {
+                    steps += point.path("value").path(0).path("intVal").asInt();
+                }
+            }
+            days.merge(day, steps, Integer::sum);
+        }
+        return days;
+    }
+
+    /// Возвращает действующий access token участника, при необходимости получая новый по refresh token'у
+    private Mono<String> accessToken(FitParticipant participant) {
+        AccessToken token = accessTokens.get(participant.chatId());
+        if (token != null && clock.instant().isBefore(token.expiresAt())) {
+            return Mono.just(token.value());
+        }
+        return tokenClient.post()
+                .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                .body(BodyInserters.fromFormData("grant_type", "refresh_token")
+                        .with("refresh_token", participant.refreshToken())
+                        .with("client_id", clientId)
+                        .with("client_secret", clientSecret))
+                .exchangeToMono(this::readJson)
+                .map(json -> {
+                    // Токен считается истёкшим на минуту раньше, чтобы он не истёк посреди запроса
+                    Instant expiresAt = clock.instant().plusSeconds(json.path("expires_in").asLong(3600) - 60);
+                    AccessToken fresh = new AccessToken(json.path("access_token").asText(), expiresAt);
+                    accessTokens.put(participant.chatId(), fresh);
+                    return fresh.value();
+                });
+    }
+
+    private Mono<JsonNode> readJson(ClientResponse response) {
+        return response.bodyToMono(String.class).defaultIfEmpty("{}").flatMap(body -> {
+            if (!response.statusCode().is2xxSuccessful()) {
+                return Mono.error(new GoogleFitException(response.statusCode().value(), body));
+            }
+            try {
+                return Mono.just(JSON_MAPPER.readTree(body));
+            } catch (Exception e) {
+                log.error("Unknown Google Fit response format: {}", body);
+                return Mono.error(new RuntimeException("Failed to parse Google Fit response", e));
+            }
+        });
+    }
+}
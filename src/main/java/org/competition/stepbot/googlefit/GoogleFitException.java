@@ -0,0 +1,26 @@
+package org.competition.stepbot.googlefit;
+
+import lombok.Getter;
+
+/**
+ * <p>Ошибка, которую вернул <i>Google</i> в ответ на запрос к Fitness API или к серверу авторизации.</p>
+ */
+@Getter
+public class GoogleFitException extends RuntimeException {
+    private final int statusCode;
+
+    public GoogleFitException(int statusCode, String message) {
+        super("Google Fit error " + statusCode + ": " + message);
+        this.statusCode = statusCode;
+    }
+
+    /// Проверка: истёк или отозван access token
+    public boolean isUnauthorized() {
+        return statusCode == 401;
+    }
+
+    /// Проверка: может ли повторный запрос чуть позже завершиться успешно
+    public boolean isRetryable() {
+        return statusCode == 429 || statusCode >= 500;
+    }
+}
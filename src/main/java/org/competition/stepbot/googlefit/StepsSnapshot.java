@@ -0,0 +1,22 @@
+package org.competition.stepbot.googlefit;
+
+import java.time.LocalDate;
+
+/**
+ * <p>Шаги участника по дням.</p>
+ *
+ * @param chatId id участника в <i>Telegram</i>'е
+ * @param from первый день
+ * @param dailySteps шаги за каждый день, начиная с from и заканчивая сегодняшним
+ */
+public record StepsSnapshot(long chatId, LocalDate from, int[] dailySteps) {
+
+    /// Сумма шагов за все дни
+    public long total() {
+        long total = 0;
+        for (int steps : dailySteps) {
+            total += steps;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,274 @@
+package org.competition.stepbot.history;
+
+import lombok.extern.slf4j.Slf4j;
+import org.competition.stepbot.googlefit.StepsSnapshot;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * <p>История шагов участников по дням, которая хранится в файле, отображённом в память (без базы данных и без
+ * объекта на каждый день в куче).</p>
+ *
+ * <p>Формат файла: заголовок <code>[magic int][дней в слоте int][занято слотов int]</code>, за ним слоты участников
+ * одинаковой ширины: <code>[chatId long][последний день long][шаги int × дней в слоте]</code>. Слот — кольцо из
+ * {@code maxDays} дней: шаги за день {@code d} лежат в ячейке {@code d % дней в слоте}, а последний
+ * записанный день слота определяет, какие дни в кольце сейчас: от {@code последний − дней в слоте + 1}
+ * до {@code последний}. Новый день просто записывается в свою ячейку (ячейки пропущенных дней обнуляются),
+ * а сегодняшний перезаписывается на месте. Так история всегда хранит последние {@code maxDays} дней
+ * каждого участника, и файл не растёт со временем. Сумма за период — это проход по int'ам одного слота без
+ * выделения памяти.</p>
+ *
+ * <p>Запись идёт прямо в отображённые страницы, так что при падении процесса данные остаются в page cache
+ * и попадают в файл (на диск они сбрасываются при закрытии хранилища). Новый участник сначала записывается
+ * в свой слот и только потом учитывается в счётчике занятых слотов, поэтому оборванная запись участника
+ * при следующем запуске просто не видна.</p>
+ *
+ * <p>Дни раньше окна участника записать нельзя: такая запись (и весь снимок, в котором она есть) отклоняется
+ * целиком, до изменения файла.</p>
+ *
+ * <p>Хранилище пока не бин Spring'а: синхронизации шагов, которая бы в него писала, ещё нет, а бин открывал бы
+ * файл истории в каталоге данных при каждом запуске. Его создаёт и закрывает ({@link #close()}) тот, кто
+ * им пользуется.</p>
+ */
+@Slf4j
+public class StepHistoryStore implements AutoCloseable {
+    private static final int MAGIC = 0x53545031; // "STP1"
+    private static final int MAGIC_OFFSET = 0;
+    private static final int MAX_DAYS_OFFSET = 4;
+    private static final int SLOT_COUNT_OFFSET = 8;
+    private static final int HEADER_SIZE = 12;
+    /// Смещение последнего дня внутри слота
+    private static final int LAST_DAY_OFFSET = Long.BYTES;
+    /// Смещение первой ячейки шагов внутри слота
+    private static final int DAYS_OFFSET = 2 * Long.BYTES;
+    private static final long NO_DAYS = Long.MIN_VALUE;
+    private static final int INITIAL_SLOTS = 64;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Path path;
+    private final FileChannel channel;
+    private final int maxDays;
+    private final int slotSize;
+    /// Слот каждого участника
+    private final Map<Long, Integer> slots = new HashMap<>();
+
+    private MappedByteBuffer buffer;
+    private int capacity;
+
+    /**
+     * @param dataDir каталог, в котором лежит файл истории <code>steps.history</code>
+     * @param maxDays сколько последних дней хранится у каждого участника (используется только при создании файла,
+     *                у существующего файла ширина слота берётся из заголовка)
+     */
+    public StepHistoryStore(Path dataDir, int maxDays) {
+        this.path = dataDir.resolve("steps.history");
+        try {
+            Files.createDirectories(dataDir);
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (channel.size() >= HEADER_SIZE) {
+                MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+                if (header.getInt(MAGIC_OFFSET) != MAGIC) {
+                    throw new IllegalStateException("File " + path + " is not a step history");
+                }
+                maxDays = header.getInt(MAX_DAYS_OFFSET); // ширина слота задаётся при создании файла
+            }
+            this.maxDays = maxDays;
+            this.slotSize = DAYS_OFFSET + maxDays * Integer.BYTES;
+
+            if (channel.size() >= HEADER_SIZE) {
+                capacity = (int) ((channel.size() - HEADER_SIZE) / slotSize);
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+                int used = buffer.getInt(SLOT_COUNT_OFFSET);
+                for (int slot = 0; slot < used; slot++) {
+                    slots.put(buffer.getLong(slotOffset(slot)), slot);
+                }
+            } else {
+                remap(INITIAL_SLOTS);
+                buffer.putInt(MAGIC_OFFSET, MAGIC);
+                buffer.putInt(MAX_DAYS_OFFSET, maxDays);
+                buffer.putInt(SLOT_COUNT_OFFSET, 0);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open step history " + path, e);
+        }
+        log.info("Step history {} is opened: {} participants", path, slots.size());
+    }
+
+    /**
+     * <p>Записывает шаги участника за день (добавляет участника, если его ещё нет в истории). День позже последнего
+     * записанного сдвигает окно участника.</p>
+     *
+     * @throws IllegalArgumentException если день раньше окна участника (старше {@code maxDays} дней
+     * от его последнего дня)
+     */
+    public void put(long chatId, LocalDate day, int steps) {
+        long epochDay = day.toEpochDay();
+        lock.writeLock().lock();
+        try {
+            checkRangeLocked(chatId, epochDay, epochDay);
+            int offset = slotOffset(slotLocked(chatId));
+            advanceLocked(offset, epochDay);
+            buffer.putInt(cellOffset(offset, epochDay), steps);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * <p>Записывает шаги участника за все дни снимка.</p>
+     *
+     * @throws IllegalArgumentException если какой-то день снимка окажется раньше окна участника; тогда ничего
+     * не записывается
+     */
+    public void put(StepsSnapshot snapshot) {
+        int[] daily = snapshot.dailySteps();
+        if (daily.length == 0) {
+            return;
+        }
+        long from = snapshot.from().toEpochDay();
+        long to = from + daily.length - 1;
+        lock.writeLock().lock();
+        try {
+            checkRangeLocked(snapshot.chatId(), from, to);
+            int offset = slotOffset(slotLocked(snapshot.chatId()));
+            advanceLocked(offset, to);
+            for (int i = 0; i < daily.length; i++) {
+                buffer.putInt(cellOffset(offset, from + i), daily[i]);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /// Шаги участника за день (0, если их нет в истории)
+    public int get(long chatId, LocalDate day) {
+        return (int) sum(chatId, day, day);
+    }
+
+    /**
+     * @param chatId id участника
+     * @param from первый день периода
+     * @param to последний день периода (включительно)
+     * @return сумма шагов участника за период (дни, которых нет в истории, считаются нулями)
+     */
+    public long sum(long chatId, LocalDate from, LocalDate to) {
+        lock.readLock().lock();
+        try {
+            Integer slot = slots.get(chatId);
+            if (slot == null) {
+                return 0;
+            }
+            int offset = slotOffset(slot);
+            long lastDay = buffer.getLong(offset + LAST_DAY_OFFSET);
+            if (lastDay == NO_DAYS) {
+                return 0;
+            }
+            long first = Math.max(from.toEpochDay(), lastDay - maxDays + 1);
+            long last = Math.min(to.toEpochDay(), lastDay);
+            long total = 0;
+            for (long day = first; day <= last; day++) {
+                total += buffer.getInt(cellOffset(offset, day));
+            }
+            return total;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /// Количество участников в истории
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return slots.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            buffer.force();
+            channel.close();
+        } catch (IOException e) {
+            log.error("Failed to close step history {}", path, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private int slotOffset(int slot) {
+        return HEADER_SIZE + slot * slotSize;
+    }
+
+    private int cellOffset(int slotOffset, long epochDay) {
+        return slotOffset + DAYS_OFFSET + (int) Math.floorMod(epochDay, (long) maxDays) * Integer.BYTES;
+    }
+
+    /// Проверяет, что дни from..to можно записать участнику, не меняя файл
+    private void checkRangeLocked(long chatId, long from, long to) {
+        Integer slot = slots.get(chatId);
+        long lastDay = slot == null ? NO_DAYS : buffer.getLong(slotOffset(slot) + LAST_DAY_OFFSET);
+        long newLastDay = lastDay == NO_DAYS ? to : Math.max(lastDay, to);
+        if (from <= newLastDay - maxDays) {
+            throw new IllegalArgumentException("Day " + LocalDate.ofEpochDay(from)
+                    + " is out of step history window ending " + LocalDate.ofEpochDay(newLastDay));
+        }
+    }
+
+    /// Сдвигает окно слота так, чтобы в него входил день, обнуляя ячейки дней, которые в окно ещё не попадали
+    private void advanceLocked(int slotOffset, long epochDay) {
+        long lastDay = buffer.getLong(slotOffset + LAST_DAY_OFFSET);
+        if (lastDay != NO_DAYS && epochDay <= lastDay) {
+            return;
+        }
+        long firstNew = lastDay == NO_DAYS ? epochDay - maxDays + 1 : Math.max(lastDay + 1, epochDay - maxDays + 1);
+        for (long day = firstNew; day <= epochDay; day++) {
+            buffer.putInt(cellOffset(slotOffset, day), 0);
+        }
+        buffer.putLong(slotOffset + LAST_DAY_OFFSET, epochDay);
+    }
+
+    /// Слот участника; новый участник получает следующий свободный слот (файл при необходимости увеличивается)
+    private int slotLocked(long chatId) {
+        Integer existing = slots.get(chatId);
+        if (existing != null) {
+            return existing;
+        }
+        int slot = slots.size();
+        if (slot == capacity) {
+            remap(capacity * 2);
+        }
+        buffer.putLong(slotOffset(slot), chatId);
+        buffer.putLong(slotOffset(slot) + LAST_DAY_OFFSET, NO_DAYS);
+        buffer.putInt(SLOT_COUNT_OFFSET, slot + 1);
+        slots.put(chatId, slot);
+        return slot;
+    }
+
+    private void remap(int newCapacity) {
+        long size = HEADER_SIZE + (long) newCapacity * slotSize;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Step history " + path + " is full");
+        }
+        try {
+            // Новые байты файла — нули
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to grow step history " + path, e);
+        }
+        capacity = newCapacity;
+    }
+}
@@ -0,0 +1,352 @@
+package org.competition.stepbot.leaderboard;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * <p>Таблица участников, отсортированная по сумме шагов (по убыванию; при равенстве — по chatId), которая
+ * обновляется по одному участнику, без пересортировки всей таблицы.</p>
+ *
+ * <p>Внутри — декартово дерево (treap) с размерами поддеревьев, хранящееся в массивах примитивов (узел — это
+ * индекс в массивах, 0 — пустой узел). Изменение суммы участника, место участника и участник на заданном месте
+ * вычисляются за O(log n), первые N мест и соседи участника — за O(N log n).</p>
+ *
+ * <p>Читать таблицу (например, из команд) можно параллельно; изменения (синхронизация шагов) выполняются
+ * под блокировкой записи.</p>
+ */
+@Component
+public class Leaderboard {
+    private static final int NIL = 0;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final SplittableRandom random = new SplittableRandom();
+    /// Узел каждого участника
+    private final Map<Long, Integer> nodes = new HashMap<>();
+
+    private long[] totals = new long[16];
+    private long[] chatIds = new long[16];
+    private int[] priorities = new int[16];
+    private int[] left = new int[16];
+    private int[] right = new int[16];
+    private int[] sizes = new int[16];
+    /// Узлы, освободившиеся после удаления участников (связаны через массив right)
+    private int freeList = NIL;
+    private int nextNode = 1;
+    private int root = NIL;
+
+    /// Результат split: корни левой и правой частей (используются только под блокировкой записи)
+    private int splitLeft;
+    private int splitRight;
+
+    /**
+     * <p>Прибавляет шаги к сумме участника (добавляет участника, если его ещё нет в таблице).</p>
+     *
+     * @param chatId id участника
+     * @param delta сколько шагов прибавить
+     */
+    public void add(long chatId, long delta) {
+        lock.writeLock().lock();
+        try {
+            Integer node = nodes.get(chatId);
+            setLocked(chatId, node == null ? delta : totals[node] + delta);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * <p>Задаёт сумму шагов участника (добавляет участника, если его ещё нет в таблице).</p>
+     */
+    public void set(long chatId, long total) {
+        lock.writeLock().lock();
+        try {
+            setLocked(chatId, total);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /// Убирает участника из таблицы
+    public void remove(long chatId) {
+        lock.writeLock().lock();
+        try {
+            Integer node = nodes.remove(chatId);
+            if (node != null) {
+                root = delete(root, node);
+                right[node] = freeList;
+                freeList = node;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /// Место участника (начиная с 1) или -1, если его нет в таблице
+    public int rankOf(long chatId) {
+        lock.readLock().lock();
+        try {
+            Integer node = nodes.get(chatId);
+            return node == null ? -1 : rank(node);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /// Сумма шагов участника (0, если его нет в таблице)
+    public long totalOf(long chatId) {
+        lock.readLock().lock();
+        try {
+            Integer node = nodes.get(chatId);
+            return node == null ? 0 : totals[node];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /// Количество участников в таблице
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return sizes[root];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param n сколько первых мест нужно
+     * @return первые n мест таблицы (или меньше, если участников меньше)
+     */
+    public List<LeaderboardEntry> top(int n) {
+        lock.readLock().lock();
+        try {
+            return range(1, Math.min(n, sizes[root]));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param chatId id участника
+     * @param radius сколько соседей сверху и снизу нужно
+     * @return участник и его соседи по таблице (пустой список, если участника нет в таблице)
+     */
+    public List<LeaderboardEntry> around(long chatId, int radius) {
+        lock.readLock().lock();
+        try {
+            Integer node = nodes.get(chatId);
+            if (node == null) {
+                return List.of();
+            }
+            int rank = rank(node);
+            return range(Math.max(1, rank - radius), Math.min(sizes[root], rank + radius));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * <p>Первые места и соседи участника, прочитанные под одной блокировкой, то есть из одного состояния таблицы
+     * (по отдельности {@link #top} и {@link #around} могут увидеть таблицу до и после изменения).</p>
+     *
+     * @param n сколько первых мест нужно
+     * @param chatId id участника
+     * @param radius сколько соседей участника сверху и снизу нужно
+     * @return первые n мест, а за ними (если участник не среди них) его соседи ниже n-го места; всё по возрастанию
+     * места
+     */
+    public List<LeaderboardEntry> topAndAround(int n, long chatId, int radius) {
+        lock.readLock().lock();
+        try {
+            int topSize = Math.min(n, sizes[root]);
+            List<LeaderboardEntry> entries = range(1, topSize);
+            Integer node = nodes.get(chatId);
+            if (node != null) {
+                int rank = rank(node);
+                if (rank > topSize) {
+                    range(Math.max(topSize + 1, rank - radius), Math.min(sizes[root], rank + radius), entries);
+                }
+            }
+            return entries;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<LeaderboardEntry> range(int fromRank, int toRank) {
+        return range(fromRank, toRank, new ArrayList<>(Math.max(0, toRank - fromRank + 1)));
+    }
+
+    private List<LeaderboardEntry> range(int fromRank, int toRank, List<LeaderboardEntry> entries) {
+        for (int rank = fromRank; rank <= toRank; rank++) {
+            int node = select(rank);
+            entries.add(new LeaderboardEntry(rank, chatIds[node], totals[node]));
+        }
+        return entries;
+    }
+
+    private void setLocked(long chatId, long total) {
+        Integer existing = nodes.get(chatId);
+        int node;
+        if (existing != null) {
+            node = existing;
+            if (totals[node] == total) {
+                return;
+            }
+            root = delete(root, node);
+        } else {
+            node = allocate(chatId);
+            nodes.put(chatId, node);
+        }
+        totals[node] = total;
+        left[node] = NIL;
+        right[node] = NIL;
+        sizes[node] = 1;
+        root = insert(root, node);
+    }
+
+    private int allocate(long chatId) {
+        int node;
+        if (freeList != NIL) {
+            node = freeList;
+            freeList = right[node];
+        } else {
+            if (nextNode == totals.length) {
+                grow();
+            }
+            node = nextNode++;
+        }
+        chatIds[node] = chatId;
+        priorities[node] = random.nextInt();
+        return node;
+    }
+
+    private void grow() {
+        int capacity = totals.length * 2;
+        totals = Arrays.copyOf(totals, capacity);
+        chatIds = Arrays.copyOf(chatIds, capacity);
+        priorities = Arrays.copyOf(priorities, capacity);
+        left = Arrays.copyOf(left, capacity);
+        right = Arrays.copyOf(right, capacity);
+        sizes = Arrays.copyOf(sizes, capacity);
+    }
+
+    /// Проверка: стоит ли узел a в таблице выше, чем участник с суммой total и id chatId
+    private boolean before(int a, long total, long chatId) {
+        return totals[a] != total ? totals[a] > total : chatIds[a] < chatId;
+    }
+
+    private void update(int node) {
+        sizes[node] = sizes[left[node]] + sizes[right[node]] + 1;
+    }
+
+    /// Делит дерево t на узлы, стоящие выше ключа (splitLeft), и все остальные (splitRight)
+    private void split(int t, long total, long chatId) {
+        if (t == NIL) {
+            splitLeft = NIL;
+            splitRight = NIL;
+        } else if (before(t, total, chatId)) {
+            split(right[t], total, chatId);
+            right[t] = splitLeft;
+            update(t);
+            splitLeft = t;
+        } else {
+            split(left[t], total, chatId);
+            left[t] = splitRight;
+            update(t);
+            splitRight = t;
+        }
+    }
+
+    /// Объединяет деревья, если все узлы a стоят выше всех узлов b
+    private int merge(int a, int b) {
+        if (a == NIL) {
+            return b;
+        }
+        if (b == NIL) {
+            return a;
+        }
+        if (priorities[a] > priorities[b]) {
+            right[a] = merge(right[a], b);
+            update(a);
+            return a;
+        }
+        left[b] = merge(a, left[b]);
+        update(b);
+        return b;
+    }
+
+    private int insert(int t, int node) {
+        if (t == NIL) {
+            return node;
+        }
+        if (priorities[node] > priorities[t]) {
+            split(t, totals[node], chatIds[node]);
+            left[node] = splitLeft;
+            right[node] = splitRight;
+            update(node);
+            return node;
+        }
+        if (before(node, totals[t], chatIds[t])) {
+            left[t] = insert(left[t], node);
+        } else {
+            right[t] = insert(right[t], node);
+        }
+        update(t);
+        return t;
+    }
+
+    private int delete(int t, int node) {
+        if (t == node) {
+            return merge(left[t], right[t]);
+        }
+        if (before(node, totals[t], chatIds[t])) {
+            left[t] = delete(left[t], node);
+        } else {
+            right[t] = delete(right[t], node);
+        }
+        update(t);
+        return t;
+    }
+
+    /// Место узла (начиная с 1)
+    private int rank(int node) {
+        long total = totals[node];
+        long chatId = chatIds[node];
+        int rank = 1;
+        int t = root;
+        while (t != node) {
+            if (before(t, total, chatId)) {
+                rank += sizes[left[t]] + 1;
+                t = right[t];
+            } else {
+                t = left[t];
+            }
+        }
+        return rank + sizes[left[node]];
+    }
+
+    /// Узел на месте rank (начиная с 1)
+    private int select(int rank) {
+        int t = root;
+        while (true) {
+            int leftSize = sizes[left[t]];
+            if (rank <= leftSize) {
+                t = left[t];
+            } else if (rank == leftSize + 1) {
+                return t;
+            } else {
+                rank -= leftSize + 1;
+                t = right[t];
+            }
+        }
+    }
+}
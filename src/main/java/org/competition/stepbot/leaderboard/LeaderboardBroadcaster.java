@@ -0,0 +1,167 @@
+package org.competition.stepbot.leaderboard;
+
+import lombok.extern.slf4j.Slf4j;
+import org.competition.stepbot.telegram.MessageInfo;
+import org.competition.stepbot.telegram.TelegramBot;
+import org.competition.stepbot.telegram.UsernameIndex;
+import org.competition.stepbot.telegram.exceptions.TelegramApiException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Рассылка таблицы участников. Каждому участнику таблица отправляется один раз, а потом это же сообщение
+ * изменяется (<code>editMessageText</code>). Для каждого чата запоминается id сообщения с таблицей и хеш его
+ * текста, и если текст таблицы для чата не изменился, то чат пропускается без обращения к <i>Telegram</i>'у.</p>
+ *
+ * <p>Участники в таблице подписаны username'ом из {@link UsernameIndex}, а если бот его не знает — просто
+ * «Участник»: таблицу видят все участники, поэтому id чатов в неё не попадают.</p>
+ *
+ * <p>Периодическая рассылка включается настройкой <code>leaderboard.broadcast-cron</code>.</p>
+ */
+@Slf4j
+@Component
+public class LeaderboardBroadcaster {
+    /// Последнее отправленное в чат сообщение с таблицей
+    private record Rendered(long messageId, long textHash) {
+    }
+
+    private final Leaderboard leaderboard;
+    private final TelegramBot telegramBot;
+    private final UsernameIndex usernames;
+    private final int topSize;
+    private final int radius;
+
+    private final ConcurrentMap<Long, Rendered> rendered = new ConcurrentHashMap<>();
+    private final LongAdder skipped = new LongAdder();
+
+    public LeaderboardBroadcaster(Leaderboard leaderboard, TelegramBot telegramBot, UsernameIndex usernames,
+                                  @Value("${leaderboard.top-size:10}") int topSize,
+                                  @Value("${leaderboard.radius:1}") int radius) {
+        this.leaderboard = leaderboard;
+        this.telegramBot = telegramBot;
+        this.usernames = usernames;
+        this.topSize = topSize;
+        this.radius = radius;
+    }
+
+    @Scheduled(cron = "${leaderboard.broadcast-cron:-}")
+    void scheduledBroadcast() {
+        broadcast().subscribe(null, err -> log.error("Leaderboard broadcast failed", err));
+    }
+
+    /**
+     * <p>Отправляет (или обновляет) таблицу всем участникам из {@link Leaderboard}. Чаты, которых больше нет
+     * в таблице, забываются: их сообщение больше не изменяется, а запись о нём не копится.</p>
+     *
+     * @return завершается, когда таблица отправлена всем участникам, у которых она изменилась
+     */
+    public Mono<Void> broadcast() {
+        return Flux.defer(() -> {
+                    List<LeaderboardEntry> participants = leaderboard.top(leaderboard.size());
+                    Set<Long> current = new HashSet<>();
+                    for (LeaderboardEntry entry : participants) {
+                        current.add(entry.chatId());
+                    }
+                    rendered.keySet().retainAll(current);
+                    return Flux.fromIterable(participants);
+                })
+                .flatMap(entry -> publish(entry.chatId()))
+                .then();
+    }
+
+    /// Сколько чатов сейчас помнит рассылка (по одному на участника, которому таблица уже отправлена)
+    int renderedCount() {
+        return rendered.size();
+    }
+
+    /// Сколько раз чат был пропущен, потому что его таблица не изменилась
+    public long skippedCount() {
+        return skipped.sum();
+    }
+
+    /**
+     * <p>Отправляет таблицу в чат, изменяет уже отправленную, или ничего не делает, если таблица не изменилась.</p>
+     */
+    Mono<Void> publish(long chatId) {
+        String text = render(chatId);
+        long hash = hash(text);
+        Rendered previous = rendered.get(chatId);
+        if (previous != null && previous.textHash() == hash) {
+            skipped.increment();
+            return Mono.empty();
+        }
+
+        Mono<MessageInfo> delivery = previous == null
+                ? telegramBot.sendMessage(chatId, text)
+                : telegramBot.editMessageText(chatId, previous.messageId(), text)
+                        .onErrorResume(TelegramApiException.class, e -> {
+                            if (e.isMessageNotModified()) {
+                                return Mono.just(new MessageInfo(text, chatId, previous.messageId()));
+                            }
+                            // Сообщение удалено или его больше нельзя изменить — отправляется новое
+                            log.debug("Failed to edit leaderboard in chat {}: {}", chatId, e.getDescription());
+                            return telegramBot.sendMessage(chatId, text);
+                        });
+        return delivery
+                // Без id сообщение нельзя изменить, поэтому в следующий раз таблица будет отправлена заново
+                .doOnNext(info -> {
+                    if (info.hasMessageId()) {
+                        rendered.put(chatId, new Rendered(info.messageId(), hash));
+                    }
+                })
+                .onErrorResume(err -> {
+                    log.error("Failed to deliver leaderboard to chat {}", chatId, err);
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    /**
+     * <p>Текст таблицы для участника: первые места и (если участник не среди них) его соседи. Места читаются из
+     * одного состояния {@link Leaderboard}, поэтому синхронизация шагов во время рассылки не может разорвать
+     * таблицу (или убрать из неё участника между чтением его места и его соседей).</p>
+     */
+    String render(long chatId) {
+        StringBuilder sb = new StringBuilder("Таблица участников\n");
+        int previousRank = 0;
+        for (LeaderboardEntry entry : leaderboard.topAndAround(topSize, chatId, radius)) {
+            if (entry.rank() > previousRank + 1) {
+                sb.append("…\n");
+            }
+            previousRank = entry.rank();
+            String username = usernames.username(entry.chatId());
+            sb.append(entry.rank()).append(". ");
+            if (username != null) {
+                sb.append('@').append(username);
+            } else {
+                sb.append("Участник");
+            }
+            sb.append(" — ").append(entry.total()).append(" шагов");
+            if (entry.chatId() == chatId) {
+                sb.append(" (вы)");
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    /// 64-битный хеш FNV-1a (у {@link String#hashCode()} слишком часты совпадения для такой проверки)
+    private static long hash(String text) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < text.length(); i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
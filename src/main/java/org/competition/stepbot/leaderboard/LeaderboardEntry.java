@@ -0,0 +1,9 @@
+package org.competition.stepbot.leaderboard;
+
+/**
+ * @param rank место в таблице (начиная с 1)
+ * @param chatId id участника в <i>Telegram</i>'е
+ * @param total сумма шагов участника
+ */
+public record LeaderboardEntry(int rank, long chatId, long total) {
+}
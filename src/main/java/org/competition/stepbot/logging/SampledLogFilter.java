@@ -0,0 +1,46 @@
+package org.competition.stepbot.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import lombok.Setter;
+import org.slf4j.Marker;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Ограничивает количество записей с маркером {@link UpdateLogContext#PER_UPDATE}: не больше
+ * {@code maxPerSecond} записей в секунду, остальные отбрасываются. Остальные записи фильтр не трогает.</p>
+ *
+ * <p>Решение принимается до создания события, поэтому отброшенная запись не форматируется и не попадает
+ * в очередь appender'а. Счётчик без блокировок: окно в одну секунду и количество записей в нём.</p>
+ */
+public class SampledLogFilter extends TurboFilter {
+    private static final long WINDOW_NANOS = 1_000_000_000L;
+
+    private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+    private final AtomicInteger windowCount = new AtomicInteger();
+
+    /// Сколько записей с маркером пропускать в секунду
+    @Setter
+    private int maxPerSecond = 20;
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        if (marker == null || !marker.contains(UpdateLogContext.PER_UPDATE) || !isStarted()) {
+            return FilterReply.NEUTRAL;
+        }
+        // Выключенный уровень не должен расходовать лимит
+        if (!level.isGreaterOrEqual(logger.getEffectiveLevel())) {
+            return FilterReply.DENY;
+        }
+        long now = System.nanoTime();
+        long start = windowStart.get();
+        if (now - start >= WINDOW_NANOS && windowStart.compareAndSet(start, now)) {
+            windowCount.set(0);
+        }
+        return windowCount.incrementAndGet() <= maxPerSecond ? FilterReply.NEUTRAL : FilterReply.DENY;
+    }
+}
@@ -0,0 +1,60 @@
+package org.competition.stepbot.logging;
+
+import org.slf4j.Logger;
+import org.slf4j.Marker;
+import org.slf4j.MarkerFactory;
+import org.slf4j.spi.LoggingEventBuilder;
+import org.slf4j.spi.NOPLoggingEventBuilder;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+/**
+ * <p>Корреляция логов с обновлением. Id обновления кладётся в контекст Reactor'а при начале обработки
+ * обновления и доступен всем этапам обработки (в том числе запросам к <i>Telegram</i>'у), без {@code MDC} и
+ * без {@code toString()} обновлений и ответов в логах.</p>
+ *
+ * <p>Записи, которые делаются на каждое обновление, создаются через {@link #perUpdate}: они помечаются маркером
+ * {@link #PER_UPDATE} (в профиле <code>prod</code> их количество ограничивается {@link SampledLogFilter})
+ * и несут id обновления и чата отдельными полями.</p>
+ */
+public final class UpdateLogContext {
+    public static final String UPDATE_ID = "updateId";
+    public static final String CHAT_ID = "chatId";
+    /// Маркер записей, которые делаются для каждого обновления
+    public static final Marker PER_UPDATE = MarkerFactory.getMarker("PER_UPDATE");
+
+    private UpdateLogContext() {
+    }
+
+    public static Context of(long updateId) {
+        return Context.of(UPDATE_ID, updateId);
+    }
+
+    /// Id обрабатываемого обновления или -1, если вызов не относится к обновлению (например, рассылка)
+    public static long updateId(ContextView context) {
+        return context.getOrDefault(UPDATE_ID, -1L);
+    }
+
+    /**
+     * <p>Начинает запись уровня INFO с маркером {@link #PER_UPDATE} и полями {@value #UPDATE_ID} и
+     * {@value #CHAT_ID}. В JSON-логах профиля <code>prod</code> они выводятся отдельными полями, и записи одного
+     * обновления или чата находятся без разбора текста сообщения.</p>
+     *
+     * <p>Fluent API SLF4J не передаёт маркер записи turbo-фильтрам, поэтому лимит {@link SampledLogFilter}
+     * проверяется здесь: отброшенная запись получает пустой builder и не форматируется.</p>
+     *
+     * @param log логгер, в который делается запись
+     * @param updateId id обновления (-1, если неизвестен)
+     * @param chatId id чата
+     * @return builder записи; запись делается вызовом {@link LoggingEventBuilder#log(String, Object...)}
+     */
+    public static LoggingEventBuilder perUpdate(Logger log, long updateId, long chatId) {
+        if (!log.isInfoEnabled(PER_UPDATE)) {
+            return NOPLoggingEventBuilder.singleton();
+        }
+        return log.atInfo()
+                .addMarker(PER_UPDATE)
+                .addKeyValue(UPDATE_ID, updateId)
+                .addKeyValue(CHAT_ID, chatId);
+    }
+}
@@ -0,0 +1,174 @@
+package org.competition.stepbot.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.competition.stepbot.telegram.exceptions.UserError;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * <p>Метрики обработки обновлений и вызовов Bot API (доступны по <code>/actuator/prometheus</code> на порту
+ * <code>management.server.port</code>).</p>
+ *
+ * <p>Все теги имеют небольшое фиксированное множество значений: этап обработки, имя команды из
+ * {@link org.competition.stepbot.telegram.commands.CommandRegistry}, метод Bot API, HTTP-код и код причины
+ * ошибки ({@link org.competition.stepbot.telegram.exceptions.ErrorStrBox#reason()}). Id чатов и тексты сообщений
+ * в теги не попадают.</p>
+ *
+ * <p>Метры создаются один раз на сочетание тегов и дальше берутся из кеша: запись в них на горячем пути — два
+ * поиска в {@link ConcurrentHashMap} без выделения памяти, а не {@code builder().register()} на каждое событие.</p>
+ *
+ * <p>Метрики компонентов, от которых зависят команды, регистрируются отдельно в {@link SessionMetrics}, иначе
+ * получилась бы циклическая зависимость (команды → {@link org.competition.stepbot.telegram.TelegramBot} →
+ * метрики).</p>
+ */
+@Component
+public class BotMetrics {
+    /// Значение тега, когда команда не найдена (имя из сообщения пользователя в тег не пишется)
+    public static final String NO_COMMAND = "none";
+    private static final String OK = "ok";
+
+    private final MeterRegistry registry;
+    private final AtomicInteger inFlightUpdates = new AtomicInteger();
+    private final Timers stageTimers = new Timers("bot.pipeline.stage", "stage", "outcome");
+    private final Timers commandTimers = new Timers("bot.commands", "command", "outcome");
+    private final Timers apiTimers = new Timers("bot.telegram.requests", "method", "status");
+    /// Счётчики bot.updates.skipped по причине
+    private final ConcurrentMap<String, Counter> skippedCounters = new ConcurrentHashMap<>();
+
+    public BotMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        Gauge.builder("bot.updates.in_flight", inFlightUpdates, AtomicInteger::get)
+                .description("Обновления, обработка которых ещё не завершена")
+                .register(registry);
+    }
+
+    /**
+     * <p>Замеряет время выполнения этапа обработки (таймер <code>bot.pipeline.stage</code>).</p>
+     *
+     * @param stage название этапа
+     * @param mono этап обработки
+     * @return тот же этап, время выполнения которого записывается при его завершении
+     */
+    public <T> Mono<T> timeStage(String stage, Mono<T> mono) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return mono.doOnEach(signal -> {
+                if (signal.isOnComplete() || signal.isOnError()) {
+                    recordStage(stage, signal.isOnError() ? outcome(signal.getThrowable()) : OK, start);
+                }
+            }).doOnCancel(() -> recordStage(stage, "cancelled", start));
+        });
+    }
+
+    /// То же, что {@link #timeStage(String, Mono)}, но для синхронного этапа
+    public <T> T timeStage(String stage, Supplier<T> action) {
+        long start = System.nanoTime();
+        try {
+            T result = action.get();
+            recordStage(stage, OK, start);
+            return result;
+        } catch (RuntimeException e) {
+            recordStage(stage, outcome(e), start);
+            throw e;
+        }
+    }
+
+    /**
+     * <p>Считает обновление обрабатываемым (gauge <code>bot.updates.in_flight</code>), пока обработка
+     * не завершится.</p>
+     */
+    public Mono<Void> trackUpdate(Mono<Void> handling) {
+        return Mono.defer(() -> {
+            inFlightUpdates.incrementAndGet();
+            return handling.doFinally(signal -> inFlightUpdates.decrementAndGet());
+        });
+    }
+
+    /**
+     * <p>Замеряет выполнение команды (таймер <code>bot.commands</code>; количество вызовов и ошибок — его
+     * счётчик с тегами <code>command</code> и <code>outcome</code>).</p>
+     */
+    public <T> Mono<T> timeCommand(String command, Mono<T> run) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return run.doOnEach(signal -> {
+                if (signal.isOnComplete() || signal.isOnError()) {
+                    String outcome = signal.isOnError() ? outcome(signal.getThrowable()) : OK;
+                    commandTimers.get(command, outcome).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                }
+            });
+        });
+    }
+
+    /**
+     * <p>Записывает время ответа Bot API (таймер <code>bot.telegram.requests</code>).</p>
+     *
+     * @param method метод Bot API
+     * @param status HTTP-код ответа или название ошибки, если ответа нет
+     * @param nanos время от отправки запроса до получения ответа
+     */
+    public void recordApiCall(String method, String status, long nanos) {
+        apiTimers.get(method, status).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /// Увеличивает счётчик обновлений, отсеянных до обработки (повторы, неподдерживаемые и отклонённые)
+    public void countSkippedUpdate(String reason) {
+        Counter counter = skippedCounters.get(reason);
+        if (counter == null) {
+            counter = skippedCounters.computeIfAbsent(reason,
+                    key -> Counter.builder("bot.updates.skipped").tag("reason", key).register(registry));
+        }
+        counter.increment();
+    }
+
+    private void recordStage(String stage, String outcome, long start) {
+        stageTimers.get(stage, outcome).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    /// Таймеры с одним именем и двумя тегами; каждый таймер регистрируется при первом обращении
+    private final class Timers {
+        private final String name;
+        private final String firstTag;
+        private final String secondTag;
+        private final ConcurrentMap<String, ConcurrentMap<String, Timer>> timers = new ConcurrentHashMap<>();
+
+        Timers(String name, String firstTag, String secondTag) {
+            this.name = name;
+            this.firstTag = firstTag;
+            this.secondTag = secondTag;
+        }
+
+        Timer get(String first, String second) {
+            ConcurrentMap<String, Timer> byFirst = timers.get(first);
+            if (byFirst == null) {
+                byFirst = timers.computeIfAbsent(first, key -> new ConcurrentHashMap<>());
+            }
+            Timer timer = byFirst.get(second);
+            if (timer == null) {
+                timer = byFirst.computeIfAbsent(second, key -> Timer.builder(name)
+                        .tag(firstTag, first)
+                        .tag(secondTag, key)
+                        .publishPercentileHistogram()
+                        .register(registry));
+            }
+            return timer;
+        }
+    }
+
+    /// Результат для тега: код причины ошибки пользователя или класс неожиданного исключения
+    private static String outcome(Throwable error) {
+        if (error instanceof UserError e) {
+            return e.getReason();
+        }
+        return error.getClass().getSimpleName();
+    }
+}
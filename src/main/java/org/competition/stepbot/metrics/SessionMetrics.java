@@ -0,0 +1,41 @@
+package org.competition.stepbot.metrics;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.AllArgsConstructor;
+import org.competition.stepbot.telegram.ChatMailboxes;
+import org.competition.stepbot.telegram.UsernameIndex;
+import org.competition.stepbot.telegram.commands.BlockingCommandExecutor;
+import org.competition.stepbot.telegram.state.ConversationStateStore;
+import org.springframework.stereotype.Component;
+
+/**
+ * <p>Gauge'и состояния бота: незавершённые диалоги, чаты с непустой очередью сообщений, выполняющиеся
+ * блокирующие команды и известные боту username'ы. Регистрируются
+ * Spring'ом после создания всех компонентов.</p>
+ */
+@Component
+@AllArgsConstructor
+public class SessionMetrics implements MeterBinder {
+    private final ConversationStateStore stateStore;
+    private final ChatMailboxes chatMailboxes;
+    private final BlockingCommandExecutor blockingExecutor;
+    private final UsernameIndex usernames;
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("bot.sessions.active", stateStore, ConversationStateStore::size)
+                .description("Незавершённые диалоги команд")
+                .register(registry);
+        Gauge.builder("bot.mailboxes.active", chatMailboxes, ChatMailboxes::activeChats)
+                .description("Чаты, сообщения которых сейчас обрабатываются или ждут в очереди")
+                .register(registry);
+        Gauge.builder("bot.blocking.active", blockingExecutor, BlockingCommandExecutor::activeTasks)
+                .description("Блокирующие команды, которые выполняются на виртуальных потоках")
+                .register(registry);
+        Gauge.builder("bot.usernames.size", usernames, UsernameIndex::size)
+                .description("Username'ы участников, по которым команды находят их chatId")
+                .register(registry);
+    }
+}
@@ -0,0 +1,157 @@
+package org.competition.stepbot.telegram;
+
+import lombok.extern.slf4j.Slf4j;
+import org.competition.stepbot.Values;
+import org.competition.stepbot.telegram.exceptions.UserError;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * <p>Почтовые ящики чатов: задачи одного чата выполняются строго по очереди, в порядке поступления, а задачи
+ * разных чатов — параллельно. Так шаги многошаговой команды одного пользователя не перемешиваются, даже если
+ * он отправил несколько сообщений подряд.</p>
+ *
+ * <p>Глобальной блокировки нет: ящик чата меняется только внутри {@link ConcurrentMap#compute}, то есть под
+ * блокировкой одной ячейки {@link ConcurrentHashMap}. Ящик существует, только пока в нём есть задачи.</p>
+ *
+ * <p>Размер очереди одного чата ограничен. Что делать с задачей, которая в очередь не помещается,
+ * определяет {@link OverflowPolicy}.</p>
+ */
+@Slf4j
+@Component
+public class ChatMailboxes {
+
+    /// Что делать, если очередь чата заполнена
+    public enum OverflowPolicy {
+        /// Новая задача не выполняется
+        REJECT_NEW,
+        /// Из очереди убирается самая старая ожидающая задача, а новая ставится в конец
+        DROP_OLDEST
+    }
+
+    /// Задача ещё выполняется, и {@link #run} ещё не вышел из подписки на неё
+    private static final int RUNNING = 0;
+    /// Задача завершилась внутри подписки: следующую запускает цикл {@link #run}
+    private static final int COMPLETED_INLINE = 1;
+    /// Подписка вернулась раньше завершения: следующую задачу запускает завершение этой
+    private static final int COMPLETES_LATER = 2;
+
+    private static final class Task {
+        private final Supplier<Mono<Void>> work;
+        private final Sinks.Empty<Void> done = Sinks.empty();
+
+        private Task(Supplier<Mono<Void>> work) {
+            this.work = work;
+        }
+    }
+
+    /// Изменяется только внутри compute соответствующего ключа
+    private static final class Mailbox {
+        private final ArrayDeque<Task> queue = new ArrayDeque<>();
+    }
+
+    private final ConcurrentMap<Long, Mailbox> mailboxes = new ConcurrentHashMap<>();
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+
+    /**
+     * @param capacity сколько задач одного чата может ждать выполнения (не считая выполняющейся)
+     * @param overflowPolicy что делать, если очередь чата заполнена
+     */
+    public ChatMailboxes(@Value("${bot.mailbox.capacity:16}") int capacity,
+                         @Value("${bot.mailbox.overflow:REJECT_NEW}") OverflowPolicy overflowPolicy) {
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * <p>Ставит задачу в очередь чата. Задача начнёт выполняться, когда завершатся все задачи этого чата,
+     * поставленные раньше. Отмена подписки на результат не отменяет саму задачу.</p>
+     *
+     * @param chatId id чата
+     * @param work задача (вызывается один раз, когда подходит её очередь)
+     * @return завершается вместе с задачей; если задача не поместилась в очередь — ошибка {@link UserError}
+     */
+    public Mono<Void> submit(long chatId, Supplier<Mono<Void>> work) {
+        Task task = new Task(work);
+        Task[] startNow = new Task[1];
+        Task[] dropped = new Task[1];
+
+        mailboxes.compute(chatId, (id, mailbox) -> {
+            if (mailbox == null) { // ящика нет — значит, в чате ничего не выполняется
+                startNow[0] = task;
+                return new Mailbox();
+            }
+            if (mailbox.queue.size() >= capacity) {
+                if (overflowPolicy == OverflowPolicy.REJECT_NEW) {
+                    dropped[0] = task;
+                    return mailbox;
+                }
+                dropped[0] = mailbox.queue.pollFirst();
+            }
+            mailbox.queue.addLast(task);
+            return mailbox;
+        });
+
+        if (dropped[0] != null) {
+            log.warn("Mailbox of chat {} is full, a message is dropped", chatId);
+            dropped[0].done.tryEmitError(new UserError(chatId, Values.TOO_MANY_MESSAGES));
+        }
+        if (startNow[0] != null) {
+            run(chatId, startNow[0]);
+        }
+        return task.done.asMono();
+    }
+
+    /// Количество чатов, в которых сейчас что-то выполняется
+    public int activeChats() {
+        return mailboxes.size();
+    }
+
+    /**
+     * <p>Выполняет задачу и следующие за ней задачи чата. Задачи, которые завершаются прямо внутри подписки
+     * (синхронно), продолжаются циклом в этом же вызове, а не рекурсивно из завершения предыдущей, поэтому
+     * длинная очередь таких задач не растит стек. Задача, которая завершится позже, сама запустит следующую.</p>
+     */
+    private void run(long chatId, Task first) {
+        Task task = first;
+        while (task != null) {
+            Task current = task;
+            AtomicInteger state = new AtomicInteger(RUNNING);
+            Mono<Void> work;
+            try {
+                work = current.work.get();
+            } catch (Exception e) {
+                work = Mono.error(e);
+            }
+            work.doFinally(signal -> {
+                        if (!state.compareAndSet(RUNNING, COMPLETED_INLINE)) {
+                            run(chatId, pollNext(chatId));
+                        }
+                    })
+                    .subscribe(null, current.done::tryEmitError, current.done::tryEmitEmpty);
+            if (state.compareAndSet(RUNNING, COMPLETES_LATER)) {
+                return;
+            }
+            task = pollNext(chatId);
+        }
+    }
+
+    /// Следующая задача чата или null (тогда ящик удаляется)
+    private Task pollNext(long chatId) {
+        Task[] next = new Task[1];
+        mailboxes.computeIfPresent(chatId, (id, mailbox) -> {
+            next[0] = mailbox.queue.pollFirst();
+            return next[0] == null ? null : mailbox;
+        });
+        return next[0];
+    }
+}
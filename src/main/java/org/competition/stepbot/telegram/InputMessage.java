@@ -21,14 +21,20 @@ public record InputMessage(long chatId, String text, String command, List<String
      * @return созданный (проверенный) {@link InputMessage}
      */
     static public InputMessage of(Update update) {
-        log.debug("Creating new InputMessage from update: {}", update);
+        log.debug("Creating new InputMessage from update {}", update == null ? null : update.updateId());
 
         validateUpdate(update);
 
         long chatId = update.message().chat().chatId();
-        String text = normalizeText(update.message().text(), chatId);
+        String originalText = update.message().text();
+        List<MessageEntity> entities = update.message().entities();
 
-        ParsedEntities parsedEntities = parseEntities(update.message().entities(), update.message().text(), text, chatId);
+        MessageEntity commandEntity = findCommandEntity(entities);
+        int commandEnd = commandEntity == null || commandEntity == MANY_COMMANDS ? -1
+                : commandEntity.offset() + commandEntity.length();
+        TextNormalizer.Result normalized = normalizeText(originalText, commandEnd, chatId);
+
+        ParsedEntities parsedEntities = parseEntities(entities, originalText, normalized, commandEntity, chatId);
 
         return new InputMessage(chatId, parsedEntities.cleanedText, parsedEntities.command, parsedEntities.mentions);
     }
@@ -52,7 +58,7 @@ public record InputMessage(long chatId, String text, String command, List<String
             log.error("Message is not presented");
             throw new UserError(chatId, Values.NO_MSG_TEXT);
         }
-        if (update.message().text().length() > 4096) {
+        if (update.message().text().length() > Values.MAX_MSG_TEXT_LENGTH) {
             log.error("Message text is too long");
             throw new UserError(chatId, Values.MSG_TEXT_TOO_LONG);
         }
@@ -60,60 +66,92 @@ public record InputMessage(long chatId, String text, String command, List<String
 
     /**
      * <p>Убирает из текста управляющие / невидимые символы и проверят, что текст не пустой (или не содержит
-     * только пробелы или другие пустые символы). Потом убирает пробелы по концам и заменяет пробелы (и любые пробельные
-     * символы), которых идёт больше двух подряд, на один обычный пробел.</p>
+     * только пробелы или другие пустые символы). Потом убирает пробелы по концам и заменяет пробелы, которых идёт
+     * больше двух подряд, на один обычный пробел. Всё это делается за один проход {@link TextNormalizer}'ом,
+     * который заодно находит конец команды в обработанном тексте.</p>
      *
      * @param text текст, который нужно обработать
+     * @param commandEnd позиция конца команды в исходном тексте (или -1, если команды нет)
      * @param chatId  id чата, из которого пришло сообщение (нужен только, чтобы бросить {@link UserError})
-     * @return обработанный текст
+     * @return обработанный текст и позиция конца команды в нём
      * @throws UserError если текст пустой (или содержит только пробельные / невидимые / управляющие) символы
      */
-    private static String normalizeText(String text, long chatId) {
-        text = text.replaceAll("\\p{C}", "");
-        if (text.isBlank()) {
+    private static TextNormalizer.Result normalizeText(String text, int commandEnd, long chatId) {
+        TextNormalizer.Result normalized = TextNormalizer.normalize(text, commandEnd);
+        if (normalized.blank()) {
             log.error("Message text is empty");
             throw new UserError(chatId, Values.NO_MSG_TEXT);
         }
-        return text.trim().replaceAll("\\s+", " ");
+        return normalized;
     }
 
     private record ParsedEntities(String cleanedText, String command, List<String> mentions) {
     }
 
+    /// Означает, что в сообщении больше одной команды (сравнивается по ссылке)
+    private static final MessageEntity MANY_COMMANDS = new MessageEntity(0, 0, "bot_command");
+
     /**
-     * <p>Вынимает из текста команды и упоминания людей (с помощью {@link MessageEntity}). Проверяет, что если в тексте
-     * есть команда, то она одна и лежит в самом начале текста, и если так, то убирает её из cleanedText</p>
+     * <p>Ищет команду среди объектов текста.</p>
+     *
+     * @param entities список всех объектов, которые содержаться в тексте (может быть null)
+     * @return единственная команда, null если команд нет, или {@link #MANY_COMMANDS} если команд больше одной
+     */
+    private static MessageEntity findCommandEntity(List<MessageEntity> entities) {
+        if (entities == null) {
+            return null;
+        }
+        MessageEntity found = null;
+        for (MessageEntity entity : entities) {
+            if ("bot_command".equals(entity.type())) {
+                if (found != null) {
+                    return MANY_COMMANDS;
+                }
+                found = entity;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * <p>Вынимает из текста команду и упоминания людей (с помощью {@link MessageEntity}). Проверяет, что если в тексте
+     * есть команда, то она одна и лежит в самом начале текста, и если так, то убирает её из обработанного текста</p>
      *
      * @param entities список всех объектов, которые содержаться в тексте
      * @param originalText текст из сообщения, который никак не обработан
-     * @param cleanedText текст из сообщения, в который проверен и обработан методом {@link #normalizeText}
+     * @param normalized текст из сообщения, который проверен и обработан методом {@link #normalizeText}
+     * @param commandEntity результат {@link #findCommandEntity}
      * @param chatId id чата, из которого пришло сообщение (нужен только, чтобы бросить {@link UserError})
      * @return текст сообщения (который теперь без команды, если она была в нём), команду, список упоминаний людей
      * @throws UserError если в тексте больше одной команды или в тексте есть команда и она не в начале сообщения
      */
-    private static ParsedEntities parseEntities(List<MessageEntity> entities, String originalText, String cleanedText, long chatId) {
-        String command = "";
-        List<String> mentions = new ArrayList<>(List.of());
-
+    private static ParsedEntities parseEntities(List<MessageEntity> entities, String originalText,
+                                                TextNormalizer.Result normalized, MessageEntity commandEntity,
+                                                long chatId) {
+        String cleanedText = normalized.text();
         if (entities == null || entities.isEmpty()) {
-            return new ParsedEntities(cleanedText, command, mentions);
+            return new ParsedEntities(cleanedText, "", List.of());
         }
 
-        if (entities.stream().filter(entity -> "bot_command".equals(entity.type())).count() > 1) {
+        if (commandEntity == MANY_COMMANDS) {
             log.error("Message text contains more than 1 command");
             throw new UserError(chatId, Values.TOO_MANY_COMMANDS);
         }
 
+        String command = "";
+        List<String> mentions = List.of();
         for (var entity : entities) {
-            String strEntity = originalText.substring(entity.offset(), entity.offset() + entity.length());
             if ("mention".equals(entity.type())) {
-                mentions.add(strEntity);
-            } else if ("bot_command".equals(entity.type())) {
-                command = strEntity;
+                if (mentions.isEmpty()) {
+                    mentions = new ArrayList<>(entities.size());
+                }
+                mentions.add(originalText.substring(entity.offset(), entity.offset() + entity.length()));
+            } else if (entity == commandEntity) {
+                command = originalText.substring(entity.offset(), entity.offset() + entity.length());
                 if (!cleanedText.startsWith(Values.TG_COMMAND_PREFIX)) {
                     throw new UserError(chatId, Values.MSG_TEXT_DOES_NOT_START_WITH_COMMAND);
                 }
-                cleanedText = cleanedText.substring(entity.length());
+                cleanedText = cleanedText.substring(normalized.trackedOffset());
             }
         }
         return new ParsedEntities(cleanedText, command, mentions);
@@ -0,0 +1,101 @@
+package org.competition.stepbot.telegram;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.competition.stepbot.telegram.dto.Update;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Получение обновлений методом <code>getUpdates</code> (long polling) вместо webhook'а. Включается настройкой
+ * <code>bot.ingress=polling</code>, когда у бота нет публичного HTTPS-адреса.</p>
+ *
+ * <p>Обновления запрашиваются пачками (до {@code limit} штук) и обрабатываются {@link MessageHandler}'ом
+ * параллельно, но не больше {@code concurrency} одновременно. Следующий запрос к <i>Telegram</i>'у
+ * отправляется, как только все обновления текущей пачки взяты в обработку, то есть пока они ещё обрабатываются.
+ * Если обработка не успевает, новые пачки не запрашиваются.</p>
+ *
+ * <p>offset сдвигается сразу после получения пачки, поэтому обновления, которые обрабатывались в момент
+ * остановки приложения, повторно не придут.</p>
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "bot.ingress", havingValue = "polling")
+public class LongPollingIngress {
+    private static final Duration MIN_BACKOFF = Duration.ofSeconds(1);
+    private static final Duration MAX_BACKOFF = Duration.ofSeconds(30);
+
+    private final TelegramBot telegramBot;
+    private final MessageHandler messageHandler;
+    private final int limit;
+    private final int timeoutSeconds;
+    private final int concurrency;
+
+    /// id следующего обновления, которое нужно запросить
+    private final AtomicLong offset = new AtomicLong();
+    private volatile Disposable subscription;
+
+    public LongPollingIngress(TelegramBot telegramBot, MessageHandler messageHandler,
+                              @Value("${bot.polling.limit:100}") int limit,
+                              @Value("${bot.polling.timeout:30}") int timeoutSeconds,
+                              @Value("${bot.polling.concurrency:16}") int concurrency) {
+        this.telegramBot = telegramBot;
+        this.messageHandler = messageHandler;
+        this.limit = limit;
+        this.timeoutSeconds = timeoutSeconds;
+        this.concurrency = concurrency;
+    }
+
+    /// Запускает получение обновлений, когда приложение полностью запущено
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        log.info("Starting long polling: limit={}, timeout={}s, concurrency={}", limit, timeoutSeconds, concurrency);
+        subscription = telegramBot.deleteWebhook()
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, MIN_BACKOFF).maxBackoff(MAX_BACKOFF))
+                .thenMany(Mono.defer(this::poll).repeat())
+                .flatMapIterable(batch -> batch, 1) // следующая пачка запрашивается, когда текущая разобрана
+                .flatMap(this::handle, concurrency)
+                .subscribe(null, err -> log.error("Long polling stopped", err));
+    }
+
+    @PreDestroy
+    public void stop() {
+        Disposable current = subscription;
+        if (current != null) {
+            current.dispose();
+        }
+    }
+
+    /// Один запрос getUpdates; при ошибке повторяется с экспоненциальной задержкой
+    private Mono<List<Update>> poll() {
+        return Mono.defer(() -> telegramBot.getUpdates(offset.get(), limit, timeoutSeconds))
+                .doOnNext(this::advanceOffset)
+                .doOnError(err -> log.error("getUpdates failed: {}", err.getMessage()))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, MIN_BACKOFF).maxBackoff(MAX_BACKOFF));
+    }
+
+    private void advanceOffset(List<Update> batch) {
+        if (!batch.isEmpty()) {
+            log.debug("Received {} updates", batch.size());
+            offset.accumulateAndGet(batch.get(batch.size() - 1).updateId() + 1, Math::max);
+        }
+    }
+
+    private Mono<Void> handle(Update update) {
+        return messageHandler.handleUpdate(update)
+                .onErrorResume(err -> {
+                    log.error("Error handling update {}", update.updateId(), err);
+                    return Mono.empty();
+                });
+    }
+}
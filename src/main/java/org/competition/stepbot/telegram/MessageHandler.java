@@ -3,31 +3,48 @@ package org.competition.stepbot.telegram;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.competition.stepbot.Values;
+import org.competition.stepbot.logging.UpdateLogContext;
+import org.competition.stepbot.metrics.BotMetrics;
+import org.competition.stepbot.telegram.commands.BlockingCommand;
+import org.competition.stepbot.telegram.commands.BlockingCommandExecutor;
 import org.competition.stepbot.telegram.commands.Command;
+import org.competition.stepbot.telegram.commands.CommandRegistry;
 import org.competition.stepbot.telegram.commands.CommandResult;
 import org.competition.stepbot.telegram.dto.Update;
+import org.competition.stepbot.telegram.exceptions.ErrorStrBox;
 import org.competition.stepbot.telegram.exceptions.UserError;
+import org.competition.stepbot.telegram.state.ConversationStateStore;
+import org.competition.stepbot.telegram.state.SessionExpiry;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-
 @Slf4j
 @Service
 @AllArgsConstructor
 public class MessageHandler {
-    private final Command[] commands;
-    private final ConcurrentMap<Long, Command> currentCommand = new ConcurrentHashMap<>();
+    private final CommandRegistry commandRegistry;
+    private final ConversationStateStore stateStore;
     private final TelegramBot telegramBot;
+    private final ChatMailboxes chatMailboxes;
+    private final SessionExpiry sessionExpiry;
+    private final BotMetrics metrics;
+    private final BlockingCommandExecutor blockingExecutor;
+    private final UsernameIndex usernames;
 
     private Mono<Void> applyResult(long chatId, CommandResult result) {
-        return result.applyStateUpdate(currentCommand, chatId)
+        // Ответ в теле webhook'а приходит позже отправленных запросами сообщений, поэтому он только для единственного
+        boolean single = result.messages().size() == 1;
+        return result.applyStateUpdate(stateStore, chatId)
+                .then(Mono.fromRunnable(() -> sessionExpiry.onStateUpdate(chatId, result)))
                 .thenMany(Flux.fromIterable(result.messages()))
+                .map(msgMono -> single ? msgMono : WebhookReply.hidden(msgMono))
                 .flatMap(msgMono -> msgMono
                                     //.doOnNext(msg -> log.info("Message sent: {}", msg))
-                                    .doOnError(err -> log.error("Error sending message from command", err))
+                                    .onErrorResume(err -> { // Ошибка одного сообщения не отменяет отправку остальных
+                                        log.error("Error sending message from command", err);
+                                        return Mono.empty();
+                                    })
                 )
                 .then(); // Возвращает Mono<Void> на самый верх
 
@@ -55,37 +72,83 @@ public class MessageHandler {
                 .then();
     }
 
-    public Mono<Void> handleUpdate(Update update) {
-        log.debug("Start message handler with update: {}", update);
+    /**
+     * <p>Сообщает пользователю, что его сообщение не может быть обработано, не создавая {@link InputMessage}
+     * (используется, когда обновление отсеяно ещё до разбора, см. {@link UpdateTriage}).</p>
+     *
+     * @param chatId id чата, из которого пришло сообщение
+     * @param reason причина, по которой сообщение не обработано
+     * @return завершается после отправки сообщения об ошибке
+     */
+    public Mono<Void> rejectUpdate(long chatId, ErrorStrBox reason) {
+        return handleError(chatId, new UserError(chatId, reason));
+    }
 
-        return Mono.defer(() -> {
+    /**
+     * <p>Обрабатывает обновление: создаёт из него {@link InputMessage} и ставит его обработку в очередь чата
+     * ({@link ChatMailboxes}), чтобы сообщения одного пользователя обрабатывались строго по очереди.</p>
+     *
+     * @param update обновление из <i>Telegram</i>'а
+     * @return завершается, когда сообщение обработано
+     */
+    public Mono<Void> handleUpdate(Update update) {
+        return metrics.trackUpdate(metrics.timeStage("handle_update", Mono.deferContextual(context -> {
+            usernames.record(update);
             InputMessage inputMessage;
             try {
-                inputMessage = InputMessage.of(update);
+                inputMessage = metrics.timeStage("parse", () -> InputMessage.of(update));
             } catch (Exception e) {
                 return handleError(null, e);
             }
             long chatId = inputMessage.chatId();
+            UpdateLogContext.perUpdate(log, update.updateId(), chatId)
+                    .log("Update {} is received from chat {}", update.updateId(), chatId);
+
+            // Контекст (в том числе ответ на webhook) нужен внутри очереди чата: она подписывается на обработку сама
+            return chatMailboxes.submit(chatId, () -> processMessage(chatId, inputMessage)
+                            .contextWrite(context)
+                            .contextWrite(UpdateLogContext.of(update.updateId())))
+                    .onErrorResume(err -> handleError(chatId, err));
+        })));
+    }
 
-            Mono<CommandResult> commandResult;
-            if (currentCommand.containsKey(chatId)) {
-                commandResult = currentCommand.get(chatId).run(chatId);
+    /**
+     * <p>Находит команду для сообщения (текущую команду чата или команду из сообщения), выполняет её и применяет
+     * результат. Вызывается из очереди чата, поэтому для одного чата никогда не выполняется параллельно.</p>
+     */
+    private Mono<Void> processMessage(long chatId, InputMessage inputMessage) {
+        Mono<CommandResult> commandResult;
+        Command current = stateStore.get(chatId);
+        if (current != null) {
+            commandResult = runCommand(current, chatId);
+        } else {
+            Command cmd = commandRegistry.find(inputMessage.command());
+            if (cmd != null) {
+                log.debug("Command {} is found", cmd);
+                commandResult = runCommand(cmd, chatId);
+            } else if (commandRegistry.isForOtherBot(inputMessage.command())) {
+                log.debug("Command {} is addressed to another bot", inputMessage.command());
+                commandResult = metrics.timeCommand(BotMetrics.NO_COMMAND,
+                        Mono.error(new UserError(chatId, Values.COMMAND_FOR_OTHER_BOT)));
             } else {
-                commandResult = Flux.fromArray(commands)
-                    .filter(cmd -> cmd.toString().equals(inputMessage.command()))
-                    .next() // первая найденная команда
-                    .flatMap(cmd -> {
-                        log.debug("Command {} is found", cmd);
-                        return cmd.run(chatId);
-                    })
-                    .switchIfEmpty(Mono.defer(() -> {
-                        log.debug("No command found in message: {}", inputMessage.text());
-                        return Mono.error(new UserError(chatId, Values.NO_COMMAND_BOX));
-                    }));
+                log.debug("No command found in message: {}", inputMessage.text());
+                commandResult = metrics.timeCommand(BotMetrics.NO_COMMAND,
+                        Mono.error(new UserError(chatId, Values.NO_COMMAND_BOX)));
             }
-            return commandResult
-                    .flatMap(result -> applyResult(chatId, result))
-                    .onErrorResume(err -> handleError(chatId, err));
-        });
+        }
+        return commandResult
+                .flatMap(result -> applyResult(chatId, result))
+                .onErrorResume(err -> handleError(chatId, err));
+    }
+
+    /// Выполняет команду: блокирующую — на виртуальном потоке ({@link BlockingCommandExecutor}), остальные — как есть
+    private Mono<CommandResult> runCommand(Command command, long chatId) {
+        Mono<CommandResult> run;
+        if (command instanceof BlockingCommand blocking) {
+            run = blockingExecutor.execute(() -> blocking.runBlocking(chatId));
+        } else {
+            run = Mono.defer(() -> command.run(chatId));
+        }
+        return metrics.timeCommand(command.name(), run);
     }
 }
\ No newline at end of file
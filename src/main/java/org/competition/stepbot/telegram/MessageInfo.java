@@ -1,4 +1,11 @@
 package org.competition.stepbot.telegram;
 
 public record MessageInfo(String text, long chatId, long messageId) {
+    /// id сообщения, отправленного в теле ответа на webhook ({@link WebhookReply}): настоящий id неизвестен
+    public static final long NO_MESSAGE_ID = -1;
+
+    /// Известен ли id сообщения (только такое сообщение можно потом изменить)
+    public boolean hasMessageId() {
+        return messageId != NO_MESSAGE_ID;
+    }
 }
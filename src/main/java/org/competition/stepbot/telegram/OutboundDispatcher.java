@@ -0,0 +1,212 @@
+package org.competition.stepbot.telegram;
+
+import lombok.extern.slf4j.Slf4j;
+import org.competition.stepbot.telegram.exceptions.TelegramApiException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * <p>Диспетчер исходящих запросов к <i>Telegram</i>'у. Следит за тем, чтобы бот не превышал ограничения
+ * <i>Telegram</i>'а (около 30 сообщений в секунду всего и около одного сообщения в секунду в один чат):
+ * у каждого чата своя {@link TokenBucket}, и ещё одна общая на всего бота.</p>
+ *
+ * <p>Количество запросов, ожидающих отправки, ограничено ({@code bot.send.queue-capacity}). Когда очередь заполнена,
+ * новые запросы (асинхронно, не блокируя потоки) ждут места в порядке поступления: освободившееся место сразу
+ * передаётся первому ждущему запросу, без опроса по таймеру. Ждущих запросов тоже не больше
+ * {@code bot.send.max-waiting}; следующие завершаются {@link RejectedExecutionException}.</p>
+ *
+ * <p>Если <i>Telegram</i> всё-таки ответил 429 с <code>retry_after</code>, то корзина этого чата
+ * ставится на паузу, и запрос повторяется после неё (не больше {@code maxRetries} раз).</p>
+ */
+@Slf4j
+@Component
+public class OutboundDispatcher {
+    private static final int WAITING = 0;
+    private static final int GRANTED = 1;
+    private static final int CANCELLED = 2;
+
+    private final TokenBucket globalBucket;
+    private final ConcurrentMap<Long, TokenBucket> chatBuckets = new ConcurrentHashMap<>();
+
+    private final double chatRate;
+    private final int chatBurst;
+    private final int queueCapacity;
+    private final int maxWaiting;
+    private final int maxRetries;
+
+    /// Защищает pending и waiters
+    private final Object lock = new Object();
+    /// Запросы, которые ждут места в очереди, в порядке поступления
+    private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+    /// Запросы, которые заняли место в очереди (ждут отправки или отправляются)
+    private int pending;
+
+    /// Запрос, ждущий места в очереди; место ему передаёт {@link #releaseSlot()}
+    private final class Waiter {
+        private final MonoSink<Boolean> sink;
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+
+        Waiter(MonoSink<Boolean> sink) {
+            this.sink = sink;
+        }
+
+        /// Передаёт место запросу; false, если запрос уже отменён и место нужно передать следующему
+        boolean grant() {
+            if (!state.compareAndSet(WAITING, GRANTED)) {
+                return false;
+            }
+            sink.success(true);
+            return true;
+        }
+
+        void cancel() {
+            if (state.compareAndSet(WAITING, CANCELLED)) {
+                synchronized (lock) {
+                    waiters.remove(this);
+                }
+            } else {
+                // Место уже передано, но отмена опередила его получение (значение будет отброшено) — место свободно
+                releaseSlot();
+            }
+        }
+    }
+
+    public OutboundDispatcher(@Value("${bot.send.global-rate:30}") double globalRate,
+                              @Value("${bot.send.global-burst:10}") int globalBurst,
+                              @Value("${bot.send.chat-rate:1}") double chatRate,
+                              @Value("${bot.send.chat-burst:3}") int chatBurst,
+                              @Value("${bot.send.queue-capacity:1000}") int queueCapacity,
+                              @Value("${bot.send.max-waiting:10000}") int maxWaiting,
+                              @Value("${bot.send.max-retries:3}") int maxRetries) {
+        this.globalBucket = new TokenBucket(globalRate, globalBurst);
+        this.chatRate = chatRate;
+        this.chatBurst = chatBurst;
+        this.queueCapacity = queueCapacity;
+        this.maxWaiting = maxWaiting;
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * <p>Ставит запрос к <i>Telegram</i>'у в очередь. Запрос будет выполнен, когда в очереди будет место и когда
+     * это позволят ограничения частоты для чата {@code chatId} и для всего бота.</p>
+     *
+     * @param chatId id чата, к которому относится запрос
+     * @param call создаёт запрос (вызывается заново при каждой повторной попытке)
+     * @return результат запроса; {@link RejectedExecutionException}, если места в очереди ждут уже
+     * {@code bot.send.max-waiting} запросов
+     */
+    public <T> Mono<T> submit(long chatId, Supplier<Mono<T>> call) {
+        return Mono.usingWhen(
+                acquireSlot(),
+                slot -> throttled(chatId, call),
+                slot -> release(),
+                (slot, err) -> release(),
+                slot -> release());
+    }
+
+    /// Количество запросов, которые сейчас ждут отправки или отправляются
+    public int pendingCount() {
+        synchronized (lock) {
+            return pending;
+        }
+    }
+
+    /// Количество запросов, которые ждут места в очереди
+    public int waitingCount() {
+        synchronized (lock) {
+            return waiters.size();
+        }
+    }
+
+    /// Занимает место в очереди сразу или встаёт в конец ожидающих (раньше них новый запрос место не получает)
+    private Mono<Boolean> acquireSlot() {
+        return Mono.create(sink -> {
+            Waiter waiter = new Waiter(sink);
+            // До постановки в очередь: отменённый до этого запрос будет просто пропущен в releaseSlot()
+            sink.onCancel(waiter::cancel);
+            String rejection = null;
+            boolean acquired = false;
+            synchronized (lock) {
+                if (pending < queueCapacity && waiters.isEmpty()) {
+                    pending++;
+                    acquired = true;
+                } else if (waiters.size() >= maxWaiting) {
+                    rejection = "Outbound queue is full: " + pending + " requests are pending and "
+                            + waiters.size() + " are waiting";
+                } else {
+                    waiters.addLast(waiter);
+                }
+            }
+            if (acquired && !waiter.grant()) {
+                releaseSlot(); // запрос отменён, пока занималось место
+            } else if (rejection != null) {
+                waiter.state.set(CANCELLED);
+                sink.error(new RejectedExecutionException(rejection));
+            }
+        });
+    }
+
+    private Mono<Void> release() {
+        return Mono.fromRunnable(this::releaseSlot);
+    }
+
+    /// Передаёт освободившееся место первому ждущему запросу (pending не меняется) или освобождает его
+    private void releaseSlot() {
+        while (true) {
+            Waiter next;
+            synchronized (lock) {
+                next = waiters.pollFirst();
+                if (next == null) {
+                    pending--;
+                    return;
+                }
+            }
+            // Вне блокировки: получив место, запрос сразу продолжает выполняться в этом потоке
+            if (next.grant()) {
+                return;
+            }
+        }
+    }
+
+    private <T> Mono<T> throttled(long chatId, Supplier<Mono<T>> call) {
+        return Mono.defer(() -> delay(chatBucket(chatId).reserve()))
+                .then(Mono.defer(() -> delay(globalBucket.reserve())))
+                .then(Mono.defer(call))
+                .retryWhen(Retry.from(signals -> signals.concatMap(signal -> {
+                    if (signal.failure() instanceof TelegramApiException e && e.isTooManyRequests()
+                            && signal.totalRetries() < maxRetries) {
+                        log.warn("Too many requests to chat {}, pause for {}", chatId, e.getRetryAfter());
+                        chatBucket(chatId).pause(e.getRetryAfter());
+                        return Mono.just(signal.totalRetries());
+                    }
+                    return Mono.error(signal.failure());
+                })));
+    }
+
+    private TokenBucket chatBucket(long chatId) {
+        return chatBuckets.computeIfAbsent(chatId, id -> new TokenBucket(chatRate, chatBurst));
+    }
+
+    private static Mono<Void> delay(long nanos) {
+        return nanos == 0 ? Mono.empty() : Mono.delay(Duration.ofNanos(nanos)).then();
+    }
+
+    /// Удаляет корзины чатов, которые полностью восстановились (новая корзина для чата ничем от них не отличается)
+    @Scheduled(fixedDelayString = "${bot.send.bucket-eviction-ms:60000}")
+    void evictIdleBuckets() {
+        long now = System.nanoTime();
+        chatBuckets.values().removeIf(bucket -> bucket.isIdle(now));
+    }
+}
@@ -1,67 +1,159 @@
 package org.competition.stepbot.telegram;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import lombok.extern.slf4j.Slf4j;
+import org.competition.stepbot.logging.UpdateLogContext;
+import org.competition.stepbot.metrics.BotMetrics;
+import org.competition.stepbot.telegram.dto.Message;
+import org.competition.stepbot.telegram.dto.ResponseParameters;
+import org.competition.stepbot.telegram.dto.TelegramResponse;
+import org.competition.stepbot.telegram.dto.Update;
+import org.competition.stepbot.telegram.exceptions.TelegramApiException;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.codec.DecodingException;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Signal;
+
+import java.time.Duration;
+import java.util.List;
 import java.util.Map;
 import static org.competition.stepbot.Values.JSON_MAPPER;
 
 @Slf4j
 @Service
 public class TelegramBot {
-    private final WebClient webClient = WebClient.create("https://api.telegram.org");
+    /// Ответ методов, которые возвращают сообщение (sendMessage, editMessageText)
+    static final ParameterizedTypeReference<TelegramResponse<Message>> MESSAGE_RESPONSE =
+            new ParameterizedTypeReference<>() { };
+    private static final ParameterizedTypeReference<TelegramResponse<List<Update>>> UPDATES_RESPONSE =
+            new ParameterizedTypeReference<>() { };
+    private static final ParameterizedTypeReference<TelegramResponse<Boolean>> BOOLEAN_RESPONSE =
+            new ParameterizedTypeReference<>() { };
+
+    private final WebClient webClient;
+    private final OutboundDispatcher outboundDispatcher;
+    private final BotMetrics metrics;
+    private final String botToken;
 
-    @Value("${bot.token}")
-    private String botToken;
+    /**
+     * @param apiUrl адрес Bot API (меняется, например, чтобы направить бота на локальную заглушку <i>Telegram</i>'а)
+     * @param botToken токен бота
+     */
+    public TelegramBot(OutboundDispatcher outboundDispatcher, BotMetrics metrics,
+                       @Value("${bot.api-url:https://api.telegram.org}") String apiUrl,
+                       @Value("${bot.token}") String botToken) {
+        this.webClient = WebClient.builder()
+                .baseUrl(apiUrl)
+                .codecs(codecs -> {
+                    codecs.defaultCodecs().jackson2JsonDecoder(new Jackson2JsonDecoder(JSON_MAPPER));
+                    codecs.defaultCodecs().jackson2JsonEncoder(new Jackson2JsonEncoder(JSON_MAPPER));
+                })
+                .build();
+        this.outboundDispatcher = outboundDispatcher;
+        this.metrics = metrics;
+        this.botToken = botToken;
+    }
+
+    /**
+     * <p>Вызывает метод Bot API и записывает время ответа и его HTTP-код в метрики.</p>
+     *
+     * @param method имя метода Bot API
+     * @param body параметры метода (null — без тела запроса)
+     * @param responseType тип ответа метода
+     * @return поле <code>result</code> ответа
+     */
+    private <T> Mono<T> call(String method, Object body, ParameterizedTypeReference<TelegramResponse<T>> responseType) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            WebClient.RequestBodySpec spec = webClient.post().uri("/bot{token}/{method}", botToken, method);
+            WebClient.RequestHeadersSpec<?> request = body == null ? spec
+                    : spec.contentType(MediaType.APPLICATION_JSON).bodyValue(body);
+            return request
+                    .exchangeToMono(response -> {
+                        metrics.recordApiCall(method, String.valueOf(response.statusCode().value()),
+                                System.nanoTime() - start);
+                        return responseHandler(response, responseType);
+                    })
+                    .doOnError(WebClientRequestException.class, e ->
+                            metrics.recordApiCall(method, "IO_ERROR", System.nanoTime() - start));
+        });
+    }
 
     /**
-     * <p>Обрабатывает ответ <i>Telegram</i>'а после отправки сообщения.</p>
+     * <p>Обрабатывает ответ <i>Telegram</i>'а на вызов метода Bot API. Ответ разбирается JSON-декодером WebClient'а
+     * прямо из буферов ответа в {@link TelegramResponse}, без промежуточной строки и дерева JSON.</p>
      *
      * @param response ответ, полученный от <i>Telegram</i>'а
-     * @return объект класса {@link MessageInfo}, содержащий информацию об отправленном сообщении
-     * @throws RuntimeException если ответ <i>Telegram</i>'а сообщает об ошибки (то есть если отправленное сообщение
-     * не было успешно доставлено пользователю)
+     * @param responseType тип ответа метода
+     * @return поле <code>result</code> ответа
+     * @throws TelegramApiException если ответ <i>Telegram</i>'а сообщает об ошибки (например, если отправленное
+     * сообщение не было успешно доставлено пользователю)
      */
-    private Mono<MessageInfo> responseHandler(ClientResponse response) {
+    <T> Mono<T> responseHandler(ClientResponse response, ParameterizedTypeReference<TelegramResponse<T>> responseType) {
         log.debug("Response handler has started");
-        return response.bodyToMono(String.class).flatMap(body -> {
-            try {
-                // Проверка кода ответа
-                if (!response.statusCode().is2xxSuccessful()) {
-                    log.error("Telegram response code is {}", response.statusCode());
-                    return Mono.error(new RuntimeException("Telegram HTTP error: " + body));
-                }
+        int statusCode = response.statusCode().value();
+        boolean json = response.headers().contentType()
+                .map(MediaType.APPLICATION_JSON::isCompatibleWith)
+                .orElse(false);
+        if (!json) { // Тело ответа не JSON (например, ошибка прокси)
+            log.error("Telegram response code is {}, content type is {}", statusCode, response.headers().contentType());
+            return response.bodyToMono(String.class)
+                    .defaultIfEmpty("")
+                    .flatMap(body -> Mono.error(new TelegramApiException(statusCode, body)));
+        }
 
-                // Проверка успешности доставки сообщения
-                JsonNode jsonRoot = JSON_MAPPER.readTree(body);
-                if (!jsonRoot.path("ok").asBoolean()) {
-                    log.error("Telegram response is false");
-                    return Mono.error(new RuntimeException("Telegram error: " + jsonRoot.path("description").asText()));
-                }
+        return response.bodyToMono(responseType)
+                .onErrorMap(DecodingException.class, e -> { // Если структура ответа не соответствует ожидаемой
+                    log.error("Unknown response format: {}", e.getMessage());
+                    return new RuntimeException("Failed to parse response", e);
+                })
+                .flatMap(envelope -> {
+                    if (!envelope.ok() || !response.statusCode().is2xxSuccessful()) {
+                        log.error("Telegram response code is {}: {}", statusCode, envelope.description());
+                        return Mono.error(apiError(statusCode, envelope));
+                    }
+                    return Mono.justOrEmpty(envelope.result());
+                });
+    }
 
-                // Извлечение из ответа информации об отправленном сообщении
-                JsonNode result = jsonRoot.path("result");
-                MessageInfo messageInfo = new MessageInfo(
-                        result.path("text").asText(),
-                        result.path("chat").path("id").asLong(),
-                        result.path("message_id").asLong());
-                log.info("Telegram response is success: {}", messageInfo);
-                return Mono.just(messageInfo);
+    /// Извлекает из ответа информацию об отправленном сообщении
+    static MessageInfo toMessageInfo(Message result) {
+        return new MessageInfo(result.text(), result.chat().chatId(), result.messageId());
+    }
 
-            } catch (Exception e) { // Если структура ответа не соответствует ожидаемой
-                log.error("Unknown response format: {}", body);
-                return Mono.error(new RuntimeException("Failed to parse response", e));
-            }
-        });
+    /**
+     * <p>Создаёт исключение из ответа <i>Telegram</i>'а с ошибкой. Если в ответе есть <code>retry_after</code>,
+     * то он сохраняется в исключении, чтобы {@link OutboundDispatcher} мог повторить запрос.</p>
+     *
+     * @param statusCode HTTP-код ответа
+     * @param envelope разобранный ответ
+     * @return исключение с описанием ошибки
+     */
+    private static TelegramApiException apiError(int statusCode, TelegramResponse<?> envelope) {
+        int errorCode = envelope.errorCode() != null ? envelope.errorCode() : statusCode;
+        ResponseParameters parameters = envelope.parameters();
+        if (parameters == null) {
+            return new TelegramApiException(errorCode, envelope.description());
+        }
+        return new TelegramApiException(errorCode, envelope.description(),
+                parameters.retryAfter() != null ? Duration.ofSeconds(parameters.retryAfter()) : null,
+                parameters.migrateToChatId());
     }
 
     /**
-     * <p>Метод для отправки сообщения пользователю.</p>
+     * <p>Метод для отправки сообщения пользователю. Сообщение отправляется через {@link OutboundDispatcher},
+     * поэтому может быть отправлено не сразу, а когда это позволят ограничения <i>Telegram</i>'а.</p>
+     *
+     * <p>Если сообщение — ответ на обновление, полученное через webhook, и ответ на webhook ещё свободен
+     * ({@link WebhookReply}), то сообщение возвращается <i>Telegram</i>'у в теле этого ответа без отдельного
+     * запроса.</p>
      *
      * @param chatId id пользователя в <i>Telegram</i>'е, которому нужно отправить сообщение
      * @param text текст сообщения для отправки
@@ -69,10 +161,67 @@ public class TelegramBot {
      */
     public Mono<MessageInfo> sendMessage(long chatId, String text) {
         log.debug("Start to send a message '{}' to user {}", text, chatId);
-        return webClient.post()
-                .uri("/bot{token}/sendMessage", botToken)
-                .contentType(MediaType.APPLICATION_JSON)
-                .bodyValue(Map.of("chat_id", chatId, "text", text))
-                .exchangeToMono(this::responseHandler);
+        return Mono.deferContextual(context -> {
+                    WebhookReply reply = WebhookReply.from(context);
+                    if (reply != null && reply.claim(chatId, text)) {
+                        metrics.recordApiCall("sendMessage", "webhook_response", 0);
+                        return Mono.just(new MessageInfo(text, chatId, MessageInfo.NO_MESSAGE_ID));
+                    }
+                    return metrics.timeStage("send_message", outboundDispatcher.submit(chatId, () -> call("sendMessage",
+                            Map.of("chat_id", chatId, "text", text), MESSAGE_RESPONSE).map(TelegramBot::toMessageInfo)));
+                })
+                .doOnEach(TelegramBot::logDelivered);
+    }
+
+    /**
+     * <p>Метод для изменения текста уже отправленного ботом сообщения. Как и {@link #sendMessage}, выполняется
+     * через {@link OutboundDispatcher}.</p>
+     *
+     * @param chatId id чата, в котором находится сообщение
+     * @param messageId id сообщения (см. {@link MessageInfo#messageId()})
+     * @param text новый текст сообщения
+     * @return информация об изменённом сообщении
+     */
+    public Mono<MessageInfo> editMessageText(long chatId, long messageId, String text) {
+        log.debug("Start to edit message {} of user {}", messageId, chatId);
+        return outboundDispatcher.submit(chatId, () -> call("editMessageText",
+                Map.of("chat_id", chatId, "message_id", messageId, "text", text), MESSAGE_RESPONSE)
+                .map(TelegramBot::toMessageInfo))
+                .doOnEach(TelegramBot::logDelivered);
+    }
+
+    /// Записывает в лог доставку сообщения вместе с id обновления, которое её вызвало (из контекста Reactor'а)
+    private static void logDelivered(Signal<MessageInfo> signal) {
+        if (signal.isOnNext()) {
+            long updateId = UpdateLogContext.updateId(signal.getContextView());
+            MessageInfo message = signal.get();
+            UpdateLogContext.perUpdate(log, updateId, message.chatId())
+                    .log("Message {} is delivered to chat {} (update {})",
+                            message.messageId(), message.chatId(), updateId);
+        }
+    }
+
+    /**
+     * <p>Запрашивает новые обновления методом <code>getUpdates</code> (long polling). Если обновлений нет,
+     * <i>Telegram</i> держит запрос открытым до {@code timeoutSeconds} секунд.</p>
+     *
+     * @param offset id первого обновления, которое нужно получить (все обновления с меньшим id <i>Telegram</i>
+     *               считает обработанными)
+     * @param limit максимальное количество обновлений в ответе (1-100)
+     * @param timeoutSeconds сколько секунд ждать новых обновлений
+     * @return полученные обновления (может быть пустым списком)
+     */
+    public Mono<List<Update>> getUpdates(long offset, int limit, int timeoutSeconds) {
+        return call("getUpdates", Map.of("offset", offset, "limit", limit, "timeout", timeoutSeconds,
+                        "allowed_updates", List.of("message")), UPDATES_RESPONSE);
+    }
+
+    /**
+     * <p>Удаляет webhook, чтобы можно было получать обновления методом {@link #getUpdates}.</p>
+     *
+     * @return true, если <i>Telegram</i> подтвердил удаление
+     */
+    public Mono<Boolean> deleteWebhook() {
+        return call("deleteWebhook", null, BOOLEAN_RESPONSE);
     }
 }
@@ -0,0 +1,121 @@
+package org.competition.stepbot.telegram;
+
+/**
+ * <p>Нормализация текста входящего сообщения за один проход по code point'ам (без регулярных выражений).
+ * Результат совпадает с прежней цепочкой <code>replaceAll("\\p{C}", "")</code>, <code>isBlank()</code>,
+ * <code>trim()</code>, <code>replaceAll("\\s+", " ")</code>:</p>
+ * <ul>
+ *     <li>удаляются управляющие / невидимые символы (категория Unicode C: Cc, Cf, Co, Cn, Cs);</li>
+ *     <li>удаляются пробелы по концам, а несколько пробелов подряд заменяются на один. После удаления категории C
+ *     из символов, которые видят <code>trim</code> и <code>\s</code>, остаётся только обычный пробел,
+ *     поэтому другие пробельные символы (например, U+2003) не трогаются;</li>
+ *     <li>текст считается пустым, если в нём не осталось ни одного символа,
+ *     кроме пробельных ({@link Character#isWhitespace}).</li>
+ * </ul>
+ *
+ * <p>Если текст менять не нужно, то возвращается исходная строка без копирования.</p>
+ */
+final class TextNormalizer {
+    private static final int CATEGORY_C_MASK = (1 << Character.UNASSIGNED) | (1 << Character.CONTROL)
+            | (1 << Character.FORMAT) | (1 << Character.PRIVATE_USE) | (1 << Character.SURROGATE);
+
+    private TextNormalizer() {
+    }
+
+    /**
+     * @param text обработанный текст
+     * @param blank true, если в тексте нет ничего, кроме пробельных символов (тогда text использовать нельзя)
+     * @param trackedOffset позиция в обработанном тексте, соответствующая запрошенной позиции в исходном тексте
+     *                      (или -1, если позиция не запрашивалась)
+     */
+    record Result(String text, boolean blank, int trackedOffset) {
+    }
+
+    /**
+     * <p>Обрабатывает текст и заодно переводит одну позицию исходного текста (в единицах UTF-16, как offset'ы
+     * в {@link org.competition.stepbot.telegram.dto.MessageEntity}) в позицию в обработанном тексте.</p>
+     *
+     * @param text исходный текст
+     * @param trackedOffset позиция в исходном тексте, которую нужно перевести (или -1, если не нужно)
+     * @return обработанный текст, признак пустого текста и переведённая позиция
+     */
+    static Result normalize(String text, int trackedOffset) {
+        final int length = text.length();
+        char[] out = null; // создаётся только при первом изменении текста, до этого вывод совпадает с началом text
+        int size = 0;
+        boolean pendingSpace = false;
+        boolean blank = true;
+        int mapped = -1;
+
+        int i = 0;
+        while (i < length) {
+            if (mapped < 0 && trackedOffset >= 0 && i >= trackedOffset) {
+                mapped = size;
+            }
+            int cp = text.codePointAt(i);
+            int charCount = Character.charCount(cp);
+
+            if (((CATEGORY_C_MASK >> Character.getType(cp)) & 1) != 0) { // управляющий / невидимый символ
+                if (out == null) {
+                    out = copyPrefix(text, size);
+                }
+                i += charCount;
+                continue;
+            }
+
+            if (cp == ' ') {
+                if (pendingSpace || size == 0) { // повторный пробел или пробел в начале
+                    if (out == null) {
+                        out = copyPrefix(text, size);
+                    }
+                }
+                pendingSpace = true;
+                i++;
+                continue;
+            }
+
+            if (pendingSpace) {
+                if (size > 0) {
+                    if (out != null) {
+                        out[size] = ' ';
+                    }
+                    size++;
+                }
+                pendingSpace = false;
+            }
+            if (blank && !Character.isWhitespace(cp)) {
+                blank = false;
+            }
+            if (out != null) {
+                out[size] = text.charAt(i);
+                if (charCount == 2) {
+                    out[size + 1] = text.charAt(i + 1);
+                }
+            }
+            size += charCount;
+            i += charCount;
+        }
+        if (mapped < 0 && trackedOffset >= 0) {
+            mapped = size;
+        }
+
+        if (blank) {
+            return new Result("", true, mapped);
+        }
+        if (out == null) {
+            // Ничего не удалено; пробел мог остаться только в самом конце
+            return new Result(pendingSpace ? text.substring(0, size) : text, false, mapped);
+        }
+        return new Result(new String(out, 0, size), false, mapped);
+    }
+
+    /**
+     * <p>Создаёт буфер для вывода и копирует в него уже выведенную часть текста. Пока текст не менялся,
+     * выведенная часть — это первые {@code size} символов исходного текста (отложенный пробел ещё не выведен).</p>
+     */
+    private static char[] copyPrefix(String text, int size) {
+        char[] out = new char[text.length()];
+        text.getChars(0, size, out, 0);
+        return out;
+    }
+}
@@ -0,0 +1,62 @@
+package org.competition.stepbot.telegram;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Ограничитель частоты запросов ("корзина токенов"), реализованный по алгоритму GCRA: вместо количества
+ * оставшихся токенов хранится теоретическое время, когда корзина снова станет полной. Поэтому резервирование
+ * токена — это один CAS без блокировок и без фоновых задач для пополнения.</p>
+ */
+final class TokenBucket {
+    /// Время (в наносекундах), за которое восстанавливается один токен
+    private final long intervalNanos;
+    /// На сколько можно опережать расписание, то есть размер допустимого всплеска
+    private final long toleranceNanos;
+    private final AtomicLong theoreticalArrival;
+
+    /**
+     * @param permitsPerSecond сколько запросов в секунду разрешено в среднем
+     * @param burst сколько запросов можно сделать подряд без ожидания
+     */
+    TokenBucket(double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Rate and burst must be positive");
+        }
+        this.intervalNanos = (long) (1_000_000_000L / permitsPerSecond);
+        this.toleranceNanos = intervalNanos * (burst - 1);
+        this.theoreticalArrival = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * <p>Резервирует один токен.</p>
+     *
+     * @return сколько наносекунд нужно подождать, прежде чем использовать зарезервированный токен (0, если можно сразу)
+     */
+    long reserve() {
+        long now = System.nanoTime();
+        while (true) {
+            long tat = theoreticalArrival.get();
+            long start = Math.max(tat, now);
+            if (theoreticalArrival.compareAndSet(tat, start + intervalNanos)) {
+                return Math.max(0, start - toleranceNanos - now);
+            }
+        }
+    }
+
+    /**
+     * <p>Запрещает выдачу токенов на заданное время (например, когда <i>Telegram</i> вернул 429 и
+     * <code>retry_after</code>). Уже зарезервированные токены сдвигаются вместе с паузой.</p>
+     *
+     * @param duration на сколько приостановить корзину
+     */
+    void pause(Duration duration) {
+        long resumeAt = System.nanoTime() + duration.toNanos() + toleranceNanos;
+        theoreticalArrival.accumulateAndGet(resumeAt, Math::max);
+    }
+
+    /// Проверка: полностью ли восстановилась корзина (такую корзину можно удалить и потом создать заново)
+    boolean isIdle(long nowNanos) {
+        return theoreticalArrival.get() - nowNanos <= 0;
+    }
+}
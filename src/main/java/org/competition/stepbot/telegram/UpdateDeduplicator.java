@@ -0,0 +1,62 @@
+package org.competition.stepbot.telegram;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Отсеивает повторно доставленные обновления. <i>Telegram</i> повторяет отправку webhook'а, если бот ответил
+ * медленно или с ошибкой, и без этой проверки команды выполнялись бы дважды.</p>
+ *
+ * <p>update_id в <i>Telegram</i>'е монотонно растут, поэтому достаточно помнить последние {@code window} штук:
+ * обновление с id попадает в ячейку кольцевого буфера <code>id % window</code>, и в ячейке хранится последний
+ * записанный туда id. Память постоянная, проверка без блокировок (один CAS).</p>
+ */
+@Component
+public class UpdateDeduplicator {
+    private static final long EMPTY = -1;
+
+    private final AtomicLongArray slots;
+    private final int mask;
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * @param window сколько последних update_id помнить (округляется вверх до степени двойки)
+     */
+    public UpdateDeduplicator(@Value("${bot.dedup.window:4096}") int window) {
+        int size = Integer.highestOneBit(Math.max(1, window - 1)) << 1;
+        this.slots = new AtomicLongArray(size);
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            slots.set(i, EMPTY);
+        }
+    }
+
+    /**
+     * <p>Запоминает update_id.</p>
+     *
+     * @param updateId id обновления
+     * @return true, если обновление пришло впервые; false, если оно уже было (или настолько старое, что вышло
+     * за пределы окна — такое бывает только при повторной доставке)
+     */
+    public boolean markSeen(long updateId) {
+        int slot = (int) (updateId & mask);
+        while (true) {
+            long current = slots.get(slot);
+            if (current >= updateId) {
+                dropped.increment(); // без записи в лог: повторы считаются в bot.updates.skipped{reason=duplicate}
+                return false;
+            }
+            if (slots.compareAndSet(slot, current, updateId)) {
+                return true;
+            }
+        }
+    }
+
+    /// Сколько повторных обновлений было отброшено с момента запуска
+    public long droppedCount() {
+        return dropped.sum();
+    }
+}
@@ -0,0 +1,135 @@
+package org.competition.stepbot.telegram;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import lombok.extern.slf4j.Slf4j;
+import org.competition.stepbot.Values;
+import org.competition.stepbot.telegram.exceptions.ErrorStrBox;
+
+import java.io.IOException;
+
+/**
+ * <p>Быстрая предварительная проверка тела webhook'а потоковым парсером <i>Jackson</i>'а, до того как оно будет
+ * превращено в {@link org.competition.stepbot.telegram.dto.Update}. Смотрит только на вид обновления
+ * (есть ли поле <code>message</code>), id чата и длину текста, не создавая ни дерева, ни строки с текстом.</p>
+ *
+ * <p>Обновления, которые бот всё равно не обработает (не сообщения, сообщения без текста или со слишком длинным
+ * текстом), отсеиваются здесь, и для них не создаётся весь граф объектов.</p>
+ */
+@Slf4j
+final class UpdateTriage {
+    private static final JsonFactory JSON_FACTORY = Values.JSON_MAPPER.getFactory();
+
+    private UpdateTriage() {
+    }
+
+    sealed interface Result permits Accept, Ignore, Reject {
+        /// id обновления (или -1, если его не было в теле запроса)
+        long updateId();
+    }
+
+    /// Обновление нужно разобрать полностью и передать в {@link MessageHandler}
+    record Accept(long updateId) implements Result {
+    }
+
+    /// Обновление не поддерживается и не требует ответа пользователю
+    record Ignore(long updateId, String reason) implements Result {
+    }
+
+    /// Сообщение не поддерживается, и пользователю нужно сообщить об ошибке
+    record Reject(long updateId, long chatId, ErrorStrBox reason) implements Result {
+    }
+
+    /// Поля объекта <code>message</code>, нужные для проверки
+    private static final class MessageFields {
+        private boolean isObject;
+        private Long chatId;
+        private int textLength = -1;
+    }
+
+    /**
+     * <p>Определяет, что делать с телом webhook'а.</p>
+     *
+     * @param body тело запроса от <i>Telegram</i>'а
+     * @return {@link Accept}, {@link Ignore} или {@link Reject}
+     */
+    static Result triage(byte[] body) {
+        long updateId = -1;
+        MessageFields message = null;
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return new Ignore(updateId, "Update is not a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("update_id".equals(field) && value == JsonToken.VALUE_NUMBER_INT) {
+                    updateId = parser.getLongValue();
+                } else if ("message".equals(field)) {
+                    message = readMessage(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } catch (IOException e) {
+            log.error("Malformed update JSON: {}", e.getMessage());
+            return new Ignore(updateId, "Malformed JSON");
+        }
+
+        if (message == null) {
+            return new Ignore(updateId, "Update does not contain a message");
+        }
+        if (!message.isObject) {
+            return new Ignore(updateId, "Message is not an object");
+        }
+        if (message.chatId == null) {
+            return new Ignore(updateId, "Message without chat id");
+        }
+        if (message.textLength < 0) {
+            return new Reject(updateId, message.chatId, Values.NO_MSG_TEXT);
+        }
+        if (message.textLength > Values.MAX_MSG_TEXT_LENGTH) {
+            return new Reject(updateId, message.chatId, Values.MSG_TEXT_TOO_LONG);
+        }
+        return new Accept(updateId);
+    }
+
+    /**
+     * <p>Читает объект <code>message</code>, на начале которого стоит парсер.</p>
+     */
+    private static MessageFields readMessage(JsonParser parser) throws IOException {
+        MessageFields message = new MessageFields();
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return message;
+        }
+        message.isObject = true;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("text".equals(field) && value == JsonToken.VALUE_STRING) {
+                message.textLength = parser.getTextLength(); // длина в единицах UTF-16, строка не создаётся
+            } else if ("chat".equals(field) && value == JsonToken.START_OBJECT) {
+                message.chatId = readChatId(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return message;
+    }
+
+    private static Long readChatId(JsonParser parser) throws IOException {
+        Long chatId = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("id".equals(field) && value == JsonToken.VALUE_NUMBER_INT) {
+                chatId = parser.getLongValue();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return chatId;
+    }
+}
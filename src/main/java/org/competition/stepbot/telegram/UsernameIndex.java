@@ -0,0 +1,223 @@
+package org.competition.stepbot.telegram;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.competition.stepbot.telegram.dto.Update;
+import org.competition.stepbot.telegram.dto.User;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Соответствие username → chatId для пользователей, от которых бот уже получал сообщения. Bot API не умеет
+ * находить пользователя по username, поэтому команды администратора, которые принимают участников
+ * упоминаниями (<code>@username</code>), находят их здесь.</p>
+ *
+ * <p>Индекс обновляется на каждом обновлении без блокировок: запись — это один {@link ConcurrentMap#put}, а если
+ * пользователь недавно уже был записан с тем же chatId, то и её нет. Размер ограничен {@code bot.usernames.capacity}:
+ * когда индекс заметно переполняется, один поток удаляет записи, которые дольше всех не обновлялись
+ * (приблизительный LRU по номеру последнего обновления).</p>
+ *
+ * <p>Для подписей в сообщениях (например, в таблице участников) индекс хранит и обратное соответствие
+ * chatId → последний username пользователя ({@link #username(long)}); оно обновляется и чистится вместе
+ * с прямым, поэтому не больше его.</p>
+ *
+ * <p>Индекс хранится в <code>usernames.snapshot</code> в каталоге данных бота: снимок записывается во временный
+ * файл и атомарно заменяет старый раз в {@code bot.usernames.flush-ms}, если индекс изменился, и при остановке.</p>
+ */
+@Slf4j
+@Component
+public class UsernameIndex {
+    private static final int SNAPSHOT_MAGIC = 0x55534E31; // "USN1"
+
+    /// chatId пользователя и номер обновления, в котором он встречался последним
+    private record Entry(long chatId, long stamp) {
+    }
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    /// Обратное соответствие: chatId → username (в том же виде, что и ключ {@link #entries})
+    private final ConcurrentMap<Long, String> usernames = new ConcurrentHashMap<>();
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private final int capacity;
+    private final Path snapshotPath;
+
+    public UsernameIndex(@Value("${bot.usernames.capacity:10000}") int capacity,
+                         @Value("${bot.data-dir:data}") Path dataDir) {
+        this.capacity = capacity;
+        this.snapshotPath = dataDir.resolve("usernames.snapshot");
+        load();
+    }
+
+    /// Запоминает отправителя сообщения из обновления (если у него есть username)
+    public void record(Update update) {
+        if (update == null || update.message() == null) {
+            return;
+        }
+        User from = update.message().from();
+        if (from != null && from.username() != null && !from.username().isEmpty()) {
+            record(from.username(), from.id());
+        }
+    }
+
+    /// Запоминает, что у пользователя с username сейчас такой chatId
+    public void record(String username, long chatId) {
+        String key = normalize(username);
+        Entry existing = entries.get(key);
+        long now = clock.get();
+        // Запись недавно обновлялась: её место в LRU почти не изменится, поэтому лишняя запись не нужна
+        if (existing != null && existing.chatId() == chatId && now - existing.stamp() < capacity / 4) {
+            return;
+        }
+        Entry previous = entries.put(key, new Entry(chatId, clock.incrementAndGet()));
+        if (previous != null && previous.chatId() != chatId) {
+            usernames.remove(previous.chatId(), key); // username перешёл к другому пользователю
+        }
+        usernames.put(chatId, key);
+        dirty.set(true);
+        if (entries.size() > capacity + capacity / 8) {
+            evict();
+        }
+    }
+
+    /**
+     * @param mentions упоминания (с <code>@</code> или без, в любом регистре)
+     * @return chatId каждого найденного пользователя (ключ — упоминание в том виде, в котором оно передано)
+     */
+    public Map<String, Long> resolve(Collection<String> mentions) {
+        Map<String, Long> found = new HashMap<>();
+        for (String mention : mentions) {
+            Entry entry = entries.get(normalize(mention));
+            if (entry != null) {
+                found.put(mention, entry.chatId());
+            }
+        }
+        return found;
+    }
+
+    /// chatId пользователя или null, если бот его не видел
+    public Long resolve(String mention) {
+        Entry entry = entries.get(normalize(mention));
+        return entry == null ? null : entry.chatId();
+    }
+
+    /// Последний username пользователя (без <code>@</code>, в нижнем регистре) или null, если бот его не видел
+    public String username(long chatId) {
+        return usernames.get(chatId);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private static String normalize(String username) {
+        String name = username.startsWith("@") ? username.substring(1) : username;
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    /// Удаляет самые давние записи, пока их не станет capacity (выполняется только одним потоком)
+    private void evict() {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long[] stamps = entries.values().stream().mapToLong(Entry::stamp).toArray();
+            int excess = stamps.length - capacity;
+            if (excess <= 0) {
+                return;
+            }
+            Arrays.sort(stamps);
+            long threshold = stamps[excess - 1];
+            // remove(key, value): запись, обновлённая после снятия снимка, не удаляется
+            entries.forEach((key, entry) -> {
+                if (entry.stamp() <= threshold && entries.remove(key, entry)) {
+                    usernames.remove(entry.chatId(), key);
+                }
+            });
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    /// Записывает снимок индекса, если он изменился после прошлой записи
+    @Scheduled(fixedDelayString = "${bot.usernames.flush-ms:60000}")
+    public synchronized void flush() {
+        if (!dirty.getAndSet(false)) {
+            return;
+        }
+        Path tmp = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(snapshotPath.getParent());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(SNAPSHOT_MAGIC);
+                for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                    out.writeBoolean(true);
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(entry.getValue().chatId());
+                    out.writeLong(entry.getValue().stamp());
+                }
+                out.writeBoolean(false); // конец снимка: без него снимок считается оборванным
+            }
+            Files.move(tmp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            dirty.set(true);
+            log.error("Failed to write username snapshot {}", snapshotPath, e);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        flush();
+    }
+
+    private void load() {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotPath)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                log.error("File {} is not a username snapshot, it is ignored", snapshotPath);
+                return;
+            }
+            long maxStamp = 0;
+            while (in.readBoolean()) {
+                String username = in.readUTF();
+                Entry entry = new Entry(in.readLong(), in.readLong());
+                entries.put(username, entry);
+                usernames.merge(entry.chatId(), username, (older, newer) ->
+                        entries.get(older).stamp() > entry.stamp() ? older : newer);
+                maxStamp = Math.max(maxStamp, entry.stamp());
+            }
+            clock.set(maxStamp);
+            log.info("Username snapshot {} is loaded: {} users", snapshotPath, entries.size());
+        } catch (NoSuchFileException e) {
+            log.debug("No username snapshot {}", snapshotPath);
+        } catch (EOFException e) {
+            log.error("Username snapshot {} is truncated, it is ignored", snapshotPath);
+            entries.clear();
+            usernames.clear();
+        } catch (IOException e) {
+            log.error("Failed to read username snapshot {}", snapshotPath, e);
+            entries.clear();
+            usernames.clear();
+        }
+    }
+}
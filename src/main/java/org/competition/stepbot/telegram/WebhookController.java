@@ -1,29 +1,241 @@
 package org.competition.stepbot.telegram;
 
-import lombok.AllArgsConstructor;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import lombok.extern.slf4j.Slf4j;
+import org.competition.stepbot.metrics.BotMetrics;
 import org.competition.stepbot.telegram.dto.Update;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.context.WebServerGracefulShutdownLifecycle;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Приём обновлений от <i>Telegram</i>'а через webhook.</p>
+ *
+ * <p>В режиме {@link AckMode#IMMEDIATE} <i>Telegram</i>'у отвечают до обработки обновления, и повторно он его уже
+ * не пришлёт. Поэтому при остановке приложения контроллер ждёт (не дольше {@code bot.webhook.drain-timeout-ms}),
+ * пока дообработаются принятые обновления: после того как веб-сервер перестал принимать запросы, но до того, как
+ * остановлены HTTP-клиент и остальные бины. Обновления, которые не успели обработаться за это время, а также все
+ * принятые, но не обработанные обновления при аварийном завершении процесса (<code>kill -9</code>, нехватка памяти)
+ * теряются. Новые обновления во время ожидания получают 503, и <i>Telegram</i> присылает их следующему запуску.</p>
+ */
 @Slf4j
 @RestController
-@AllArgsConstructor
-public class WebhookController {
+@ConditionalOnProperty(name = "bot.ingress", havingValue = "webhook", matchIfMissing = true)
+public class WebhookController implements SmartLifecycle {
+    static final String SECRET_TOKEN_HEADER = "X-Telegram-Bot-Api-Secret-Token";
+    /// Как часто при остановке проверяется, дообработались ли принятые обновления
+    private static final long DRAIN_POLL_MS = 10;
+
+    /// Когда отвечать <i>Telegram</i>'у на webhook
+    public enum AckMode {
+        /// После обработки обновления (пока <i>Telegram</i> ждёт ответа, следующие обновления он не присылает)
+        AFTER_HANDLING,
+        /// Сразу (или через {@code bot.webhook.reply-wait-ms}); обновление обрабатывается в фоне
+        IMMEDIATE
+    }
+
     private final MessageHandler messageHandler;
+    private final UpdateDeduplicator updateDeduplicator;
+    private final BotMetrics metrics;
+    private final ObjectReader updateReader;
+    private final byte[] secretToken;
+    private final AckMode ackMode;
+    private final int queueCapacity;
+    private final boolean replyInBody;
+    private final Duration replyWait;
+    private final Duration drainTimeout;
+    /// Обновления, принятые в режиме IMMEDIATE, обработка которых ещё не завершена
+    private final AtomicInteger queued = new AtomicInteger();
+    private volatile boolean running;
+    /// Приложение останавливается: новые обновления в режиме IMMEDIATE не принимаются
+    private volatile boolean draining;
+
+    /**
+     * @param secretToken секрет, указанный при вызове <code>setWebhook</code>; если не задан, заголовок не проверяется
+     * @param ackMode когда отвечать на webhook
+     * @param queueCapacity сколько обновлений в режиме {@link AckMode#IMMEDIATE} может обрабатываться в фоне;
+     *                      остальные получают 503, и <i>Telegram</i> присылает их позже
+     * @param replyInBody возвращать ли единственный ответ на обновление в теле ответа на webhook
+     *                    ({@link WebhookReply}); такой ответ не проходит через {@link OutboundDispatcher}
+     * @param replyWaitMs сколько в режиме {@link AckMode#IMMEDIATE} ждать завершения обработки, чтобы вернуть
+     *                    единственный ответ в теле ответа на webhook (0 — не ждать)
+     * @param drainTimeoutMs сколько при остановке ждать обработки обновлений, принятых в режиме
+     *                       {@link AckMode#IMMEDIATE}
+     */
+    public WebhookController(MessageHandler messageHandler, UpdateDeduplicator updateDeduplicator, BotMetrics metrics,
+                             ObjectMapper objectMapper, @Value("${bot.webhook-secret:}") String secretToken,
+                             @Value("${bot.webhook.ack:AFTER_HANDLING}") AckMode ackMode,
+                             @Value("${bot.webhook.queue-capacity:1024}") int queueCapacity,
+                             @Value("${bot.webhook.reply-in-body:false}") boolean replyInBody,
+                             @Value("${bot.webhook.reply-wait-ms:0}") long replyWaitMs,
+                             @Value("${bot.webhook.drain-timeout-ms:10000}") long drainTimeoutMs) {
+        this.messageHandler = messageHandler;
+        this.updateDeduplicator = updateDeduplicator;
+        this.metrics = metrics;
+        this.updateReader = objectMapper.readerFor(Update.class);
+        this.secretToken = secretToken.getBytes(StandardCharsets.UTF_8);
+        this.ackMode = ackMode;
+        this.queueCapacity = queueCapacity;
+        this.replyInBody = replyInBody;
+        this.replyWait = Duration.ofMillis(replyWaitMs);
+        this.drainTimeout = Duration.ofMillis(drainTimeoutMs);
+    }
 
     /**
      * <p>Endpoint для приёма сообщений (или других обновлений), отправленных боту в <i>Telegram</i>'е.
-     * Этот метод просто принимает обновление из <i>Telegram</i>'а, и вызывает метод
-     * {@link MessageHandler#handleUpdate}, где аргументом будет это обновление.</p>
-     * @param update обновление, отправленное боту в <i>Telegram</i>'е
-     * @return
+     * Этот метод проверяет секретный заголовок, быстро отсеивает неподдерживаемые обновления с помощью
+     * {@link UpdateTriage}, отбрасывает повторно доставленные обновления ({@link UpdateDeduplicator}), и только подходящие обновления полностью разбирает и передаёт в
+     * {@link MessageHandler#handleUpdate}.</p>
+     *
+     * <p>В режиме {@link AckMode#IMMEDIATE} место в очереди занимается до проверки на повтор: обновление, которому
+     * ответили 503, ещё не считается полученным и будет обработано, когда <i>Telegram</i> пришлёт его снова.</p>
+     *
+     * <p>Если включён {@code bot.webhook.reply-in-body}, обработка отвечает на обновление единственным сообщением и
+     * успевает до ответа на webhook, то это сообщение возвращается в теле ответа как вызов <code>sendMessage</code>
+     * ({@link WebhookReply}).</p>
+     *
+     * @param secretToken значение заголовка {@value #SECRET_TOKEN_HEADER}
+     * @param body тело запроса (обновление, отправленное боту в <i>Telegram</i>'е)
+     * @return 200 для любого обновления от <i>Telegram</i>'а (даже неподдерживаемого, чтобы он не отправлял его
+     * повторно), 401 если секретный заголовок не совпал, 503 если очередь обновлений в режиме
+     * {@link AckMode#IMMEDIATE} заполнена или приложение останавливается
      */
     @PostMapping("/webhook")
-    public Mono<Void> onUpdateReceived(@RequestBody Update update) {
-        log.info("Update received: {}", update);
-        return messageHandler.handleUpdate(update);
+    public Mono<ResponseEntity<Map<String, Object>>> onUpdateReceived(
+            @RequestHeader(value = SECRET_TOKEN_HEADER, required = false) String secretToken,
+            @RequestBody byte[] body) {
+        if (!secretMatches(secretToken)) {
+            log.warn("Webhook request with wrong secret token");
+            return Mono.just(ResponseEntity.status(HttpStatus.UNAUTHORIZED).build());
+        }
+
+        boolean queuedMode = ackMode == AckMode.IMMEDIATE;
+        if (queuedMode && draining) {
+            metrics.countSkippedUpdate("stopping");
+            return Mono.just(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build());
+        }
+        if (queuedMode && queued.incrementAndGet() > queueCapacity) {
+            queued.decrementAndGet();
+            metrics.countSkippedUpdate("overloaded");
+            return Mono.just(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build());
+        }
+
+        Mono<Void> handling = metrics.timeStage("webhook", triageAndHandle(body));
+        WebhookReply reply = replyInBody ? new WebhookReply() : null;
+        if (reply != null) {
+            handling = handling.contextWrite(context -> context.put(WebhookReply.KEY, reply));
+        }
+        if (!queuedMode) {
+            return handling.then(Mono.fromSupplier(() -> respond(reply)));
+        }
+
+        Sinks.Empty<Void> done = Sinks.empty();
+        handling.doFinally(signal -> {
+                    queued.decrementAndGet();
+                    done.tryEmitEmpty();
+                })
+                .subscribe(null, err -> log.error("Failed to handle update in background", err));
+        Mono<Void> ack = reply == null || replyWait.isZero() ? Mono.empty()
+                : done.asMono().timeout(replyWait, Mono.empty());
+        return ack.then(Mono.fromSupplier(() -> respond(reply)));
+    }
+
+    /// Сколько обновлений, принятых в режиме IMMEDIATE, ещё обрабатывается
+    public int queuedCount() {
+        return queued.get();
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    /**
+     * <p>Ждёт, пока дообработаются обновления, принятые в режиме {@link AckMode#IMMEDIATE}, но не дольше
+     * {@code bot.webhook.drain-timeout-ms}. Вызывается Spring'ом при остановке приложения.</p>
+     */
+    @Override
+    public void stop() {
+        draining = true;
+        long deadline = System.nanoTime() + drainTimeout.toNanos();
+        try {
+            while (queued.get() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(DRAIN_POLL_MS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int left = queued.get();
+        if (left > 0) {
+            log.error("{} acknowledged updates are still being handled after {}, they are lost", left, drainTimeout);
+        }
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /// После того, как веб-сервер перестал принимать запросы, но раньше HTTP-клиента, который отправляет ответы
+    @Override
+    public int getPhase() {
+        return WebServerGracefulShutdownLifecycle.SMART_LIFECYCLE_PHASE - 512;
+    }
+
+    /// Отсеивает неподдерживаемые и повторные обновления, остальные передаёт в {@link MessageHandler}
+    private Mono<Void> triageAndHandle(byte[] body) {
+        Mono<Void> handling;
+        UpdateTriage.Result triage = UpdateTriage.triage(body);
+        if (triage.updateId() >= 0 && !updateDeduplicator.markSeen(triage.updateId())) {
+            metrics.countSkippedUpdate("duplicate");
+            handling = Mono.empty();
+        } else if (triage instanceof UpdateTriage.Reject reject) {
+            log.debug("Update rejected for chat {}: {}", reject.chatId(), reject.reason().excMessage());
+            metrics.countSkippedUpdate("rejected");
+            handling = messageHandler.rejectUpdate(reject.chatId(), reject.reason());
+        } else if (triage instanceof UpdateTriage.Ignore ignore) {
+            log.debug("Update ignored: {}", ignore.reason());
+            metrics.countSkippedUpdate("ignored");
+            handling = Mono.empty();
+        } else {
+            handling = Mono.fromCallable(() -> updateReader.<Update>readValue(body))
+                    .flatMap(messageHandler::handleUpdate)
+                    .onErrorResume(JsonProcessingException.class, e -> {
+                        log.error("Failed to bind update: {}", e.getMessage());
+                        return Mono.empty();
+                    });
+        }
+        return handling;
+    }
+
+    /// Ответ на webhook: 200 с вызовом sendMessage, если его заняло сообщение, иначе пустой 200
+    private static ResponseEntity<Map<String, Object>> respond(WebhookReply reply) {
+        WebhookReply.SendMessage message = reply == null ? null : reply.close();
+        return message == null ? ResponseEntity.ok().build() : ResponseEntity.ok(message.toBody());
+    }
+
+    private boolean secretMatches(String header) {
+        if (secretToken.length == 0) {
+            return true;
+        }
+        return header != null && MessageDigest.isEqual(secretToken, header.getBytes(StandardCharsets.UTF_8));
     }
 }
@@ -0,0 +1,62 @@
+package org.competition.stepbot.telegram;
+
+import reactor.core.publisher.Mono;
+import reactor.util.context.ContextView;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>Ответ на обновление, который можно вернуть <i>Telegram</i>'у прямо в теле ответа на webhook (вызов метода
+ * Bot API в ответе, см. «Making requests when getting updates»), вместо отдельного запроса
+ * <code>sendMessage</code>.</p>
+ *
+ * <p>Если включён {@code bot.webhook.reply-in-body}, {@link WebhookController} кладёт пустой ответ в контекст
+ * Reactor'а обработки обновления. {@link TelegramBot#sendMessage} занимает его, если он ещё свободен, а
+ * {@link MessageHandler} скрывает его от сообщений команды, если их больше одного: ответ в теле webhook'а доставляется после всех отправленных
+ * запросом сообщений, и порядок сообщений бы нарушился. Когда webhook отвечает <i>Telegram</i>'у, ответ
+ * закрывается ({@link #close()}), и все сообщения после этого отправляются обычными запросами.</p>
+ *
+ * <p>Результат такого вызова <i>Telegram</i> не возвращает, поэтому у сообщения нет id
+ * ({@link MessageInfo#NO_MESSAGE_ID}), а ошибки доставки (например, 429) не видны и не повторяются.</p>
+ */
+final class WebhookReply {
+    static final String KEY = WebhookReply.class.getName();
+
+    /// Сообщение, занявшее ответ
+    record SendMessage(long chatId, String text) {
+        /// Тело ответа на webhook
+        Map<String, Object> toBody() {
+            return Map.of("method", "sendMessage", "chat_id", chatId, "text", text);
+        }
+    }
+
+    private static final SendMessage OPEN = new SendMessage(0, null);
+    private static final SendMessage CLOSED = new SendMessage(0, null);
+
+    private final AtomicReference<SendMessage> state = new AtomicReference<>(OPEN);
+
+    /// Ответ из контекста обработки обновления или null, если обновление пришло не через webhook
+    static WebhookReply from(ContextView context) {
+        return context.getOrDefault(KEY, null);
+    }
+
+    /// Скрывает ответ от сообщения (оно будет отправлено обычным запросом)
+    static <T> Mono<T> hidden(Mono<T> message) {
+        return message.contextWrite(context -> context.delete(KEY));
+    }
+
+    /**
+     * @return true, если сообщение будет отправлено в теле ответа на webhook; false, если ответ уже занят другим
+     * сообщением или уже отправлен
+     */
+    boolean claim(long chatId, String text) {
+        return state.compareAndSet(OPEN, new SendMessage(chatId, text));
+    }
+
+    /// Закрывает ответ; возвращает сообщение, которое нужно вернуть в теле ответа, или null
+    SendMessage close() {
+        SendMessage previous = state.getAndSet(CLOSED);
+        return previous == OPEN || previous == CLOSED ? null : previous;
+    }
+}
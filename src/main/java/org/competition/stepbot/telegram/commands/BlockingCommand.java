@@ -0,0 +1,27 @@
+package org.competition.stepbot.telegram.commands;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * <p>Команда, которая написана обычным блокирующим кодом (запросы через SDK, чтение файлов, массовые операции
+ * администратора). {@link org.competition.stepbot.telegram.MessageHandler} выполняет её на виртуальном потоке
+ * через {@link BlockingCommandExecutor}, поэтому она не блокирует потоки Netty.</p>
+ */
+public interface BlockingCommand extends Command {
+
+    /**
+     * <p>Выполняет команду. Можно блокироваться (но не ждать ответа пользователя — для этого есть
+     * {@link CommandResult#nextStep}).</p>
+     *
+     * @param chatId id чата, из которого вызвана команда
+     * @return результат команды
+     */
+    CommandResult runBlocking(long chatId) throws Exception;
+
+    /// Выполнение не через {@link BlockingCommandExecutor} (например, напрямую из тестов)
+    @Override
+    default Mono<CommandResult> run(long chatId) {
+        return Mono.fromCallable(() -> runBlocking(chatId)).subscribeOn(Schedulers.boundedElastic());
+    }
+}
@@ -0,0 +1,61 @@
+package org.competition.stepbot.telegram.commands;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * <p>Выполняет блокирующие команды ({@link BlockingCommand}) на виртуальных потоках (по потоку на вызов) и
+ * возвращает результат в реактивную обработку сообщения.</p>
+ *
+ * <p>Одновременно выполняется не больше {@code bot.blocking.max-concurrency} команд: остальные ждут разрешения
+ * прямо на своём виртуальном потоке, что почти ничего не стоит, и не нагружают то, что вызывают команды
+ * (например, <i>Google Fit</i> или диск).</p>
+ */
+@Component
+public class BlockingCommandExecutor {
+    private final ExecutorService executor =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("blocking-command-", 0).factory());
+    private final Scheduler scheduler = Schedulers.fromExecutorService(executor, "blocking-commands");
+    private final Semaphore permits;
+    private final int maxConcurrency;
+
+    public BlockingCommandExecutor(@Value("${bot.blocking.max-concurrency:64}") int maxConcurrency) {
+        this.permits = new Semaphore(maxConcurrency);
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * @param task блокирующая работа
+     * @return результат работы (выполняется при подписке на виртуальном потоке; отмена прерывает поток)
+     */
+    public <T> Mono<T> execute(Callable<T> task) {
+        return Mono.fromCallable(() -> {
+            permits.acquire();
+            try {
+                return task.call();
+            } finally {
+                permits.release();
+            }
+        }).subscribeOn(scheduler);
+    }
+
+    /// Количество выполняющихся сейчас блокирующих команд
+    public int activeTasks() {
+        return maxConcurrency - permits.availablePermits();
+    }
+
+    @PreDestroy
+    public void close() {
+        scheduler.dispose();
+        executor.close();
+    }
+}
@@ -1,8 +1,12 @@
 package org.competition.stepbot.telegram.commands;
 
+import org.competition.stepbot.Values;
 import org.competition.stepbot.telegram.dto.Update;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.util.Set;
+
 import static org.competition.stepbot.Values.TG_COMMAND_PREFIX;
 
 public interface Command {
@@ -12,4 +16,22 @@ public interface Command {
     }
 
     Mono<CommandResult> run (long chatId);
+
+    /// Имя команды вместе с префиксом (например, "/start"), по которому её находит {@link CommandRegistry}
+    String name();
+
+    /// Другие имена (тоже с префиксом), по которым можно вызвать эту команду
+    default Set<String> aliases() {
+        return Set.of();
+    }
+
+    /// Через сколько времени без сообщений незавершённый диалог этой команды завершается (null — значение из настроек)
+    default Duration idleTimeout() {
+        return null;
+    }
+
+    /// Что написать пользователю, когда диалог завершён из-за бездействия (null или пустая строка — ничего)
+    default String expiryNotice() {
+        return Values.SESSION_EXPIRED_NOTICE;
+    }
 }
@@ -0,0 +1,127 @@
+package org.competition.stepbot.telegram.commands;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * <p>Индекс всех команд бота. Строится один раз при запуске из всех бинов {@link Command}, после чего
+ * не меняется, поэтому поиск команды — это одно обращение к неизменяемой хеш-таблице.</p>
+ *
+ * <p>Регистр в именах команд не важен, а у команд вида <code>/start@MyBot</code> (так их отправляют в группах)
+ * имя бота отбрасывается. Поиск вызывается на каждое сообщение, поэтому таблица своя, с открытой адресацией:
+ * хеш считается по символам без учёта регистра и только до '@', а имена сравниваются через
+ * {@link String#regionMatches(boolean, int, String, int, int)} — без substring и toLowerCase, то есть
+ * без выделения памяти.</p>
+ */
+@Slf4j
+@Component
+public class CommandRegistry {
+    private static final char BOT_SUFFIX_SEPARATOR = '@';
+
+    private final String[] names;
+    private final Command[] commands;
+    private final int mask;
+    private final String botUsername;
+
+    /**
+     * @param commands все команды бота
+     * @param botUsername имя бота в <i>Telegram</i>'е (без '@'); если не задано, то команды с любым
+     *                    именем бота считаются командами этого бота
+     * @throws IllegalStateException если у двух команд совпадают имена (или псевдонимы)
+     */
+    public CommandRegistry(List<Command> commands, @Value("${bot.username:}") String botUsername) {
+        this.botUsername = botUsername.startsWith("@") ? botUsername.substring(1) : botUsername;
+
+        List<String> allNames = new ArrayList<>();
+        List<Command> allCommands = new ArrayList<>();
+        for (Command command : commands) {
+            allNames.add(command.name());
+            allCommands.add(command);
+            for (String alias : command.aliases()) {
+                allNames.add(alias);
+                allCommands.add(command);
+            }
+        }
+        // Заполнение не больше половины: цепочки проб короткие, и пустая ячейка всегда найдётся
+        int size = Integer.highestOneBit(Math.max(1, allNames.size() * 2 - 1)) << 1;
+        this.names = new String[size];
+        this.commands = new Command[size];
+        this.mask = size - 1;
+        for (int i = 0; i < allNames.size(); i++) {
+            register(allNames.get(i), allCommands.get(i));
+        }
+        log.debug("Registered commands: {}", allNames);
+    }
+
+    private void register(String name, Command command) {
+        int slot = slotOf(name, name.length());
+        if (slot >= 0) {
+            throw new IllegalStateException("Command name '" + name + "' is claimed by both "
+                    + commands[slot].getClass().getName() + " and " + command.getClass().getName());
+        }
+        slot = ~slot;
+        names[slot] = name.toLowerCase(Locale.ROOT);
+        commands[slot] = command;
+    }
+
+    /**
+     * <p>Ищет команду по тексту команды из сообщения (например, <code>/start</code> или <code>/start@MyBot</code>).</p>
+     *
+     * @param command команда из сообщения (см. {@link org.competition.stepbot.telegram.InputMessage#command()})
+     * @return найденная команда или null, если такой команды нет (или она адресована другому боту)
+     */
+    public Command find(String command) {
+        int separator = command.indexOf(BOT_SUFFIX_SEPARATOR);
+        if (separator >= 0 && isForOtherBot(command, separator)) {
+            return null;
+        }
+        int slot = slotOf(command, separator >= 0 ? separator : command.length());
+        return slot >= 0 ? commands[slot] : null;
+    }
+
+    /**
+     * <p>Ищет имя <code>command[0, length)</code> в таблице без учёта регистра.</p>
+     *
+     * @return номер ячейки с этим именем или, если его нет, <code>~номер</code> пустой ячейки, куда его можно положить
+     */
+    private int slotOf(String command, int length) {
+        int slot = hash(command, length) & mask;
+        while (names[slot] != null) {
+            String name = names[slot];
+            if (name.length() == length && name.regionMatches(true, 0, command, 0, length)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return ~slot;
+    }
+
+    /// Хеш без учёта регистра: символы, равные для regionMatches(true, ...), дают одинаковый хеш
+    private static int hash(String command, int length) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + Character.toLowerCase(Character.toUpperCase(command.charAt(i)));
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    /// Проверка: адресована ли команда вида "/start@OtherBot" другому боту
+    public boolean isForOtherBot(String command) {
+        int separator = command.indexOf(BOT_SUFFIX_SEPARATOR);
+        return separator >= 0 && isForOtherBot(command, separator);
+    }
+
+    private boolean isForOtherBot(String command, int separator) {
+        if (botUsername.isEmpty()) {
+            return false;
+        }
+        int suffixLength = command.length() - separator - 1;
+        return suffixLength != botUsername.length()
+                || !command.regionMatches(true, separator + 1, botUsername, 0, suffixLength);
+    }
+}
@@ -1,18 +1,18 @@
 package org.competition.stepbot.telegram.commands;
 
 import org.competition.stepbot.telegram.MessageInfo;
+import org.competition.stepbot.telegram.state.ConversationStateStore;
 import reactor.core.publisher.Mono;
 
 import java.util.List;
-import java.util.concurrent.ConcurrentMap;
 
 public sealed interface CommandResult permits CommandResult.NextStep, CommandResult.Finish {
 
-    default Mono<Void> applyStateUpdate(ConcurrentMap<Long, Command> currentCommand, long chatId) {
+    default Mono<Void> applyStateUpdate(ConversationStateStore stateStore, long chatId) {
         if (this instanceof NextStep) {
-            return Mono.fromRunnable(() -> currentCommand.put(chatId, currentCommand()));
+            return Mono.fromRunnable(() -> stateStore.put(chatId, currentCommand()));
         } else if (this instanceof Finish) {
-            return Mono.fromRunnable(() -> currentCommand.remove(chatId));
+            return Mono.fromRunnable(() -> stateStore.remove(chatId));
         }
         return Mono.empty();
     }
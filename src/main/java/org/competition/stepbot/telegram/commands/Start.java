@@ -22,7 +22,12 @@ public class Start implements Command{
     }
 
     @Override
-    public String toString() {
+    public String name() {
         return TG_COMMAND_PREFIX + "start";
     }
+
+    @Override
+    public String toString() {
+        return name();
+    }
 }
@@ -15,6 +15,10 @@ public record Message(
         Chat chat,
 
         @JsonProperty("entities")
-        List<MessageEntity> entities
+        List<MessageEntity> entities,
+
+        /// Отправитель (нет у сообщений из каналов)
+        @JsonProperty("from")
+        User from
 ) {
 }
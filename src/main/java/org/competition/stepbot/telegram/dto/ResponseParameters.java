@@ -0,0 +1,17 @@
+package org.competition.stepbot.telegram.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * <p>Подробности неуспешного вызова метода Bot API.</p>
+ *
+ * @param migrateToChatId новый id группы, если она была преобразована в супергруппу
+ * @param retryAfter через сколько секунд можно повторить запрос (при превышении ограничений)
+ */
+public record ResponseParameters(
+        @JsonProperty("migrate_to_chat_id")
+        Long migrateToChatId,
+
+        @JsonProperty("retry_after")
+        Integer retryAfter) {
+}
@@ -0,0 +1,30 @@
+package org.competition.stepbot.telegram.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * <p>Ответ <i>Telegram</i>'а на вызов любого метода Bot API.</p>
+ *
+ * @param ok успешен ли вызов
+ * @param result результат метода (есть, только если ok)
+ * @param errorCode код ошибки (есть, только если не ok)
+ * @param description описание ошибки
+ * @param parameters подробности ошибки (например, через сколько можно повторить запрос)
+ * @param <T> тип результата метода
+ */
+public record TelegramResponse<T>(
+        @JsonProperty("ok")
+        boolean ok,
+
+        @JsonProperty("result")
+        T result,
+
+        @JsonProperty("error_code")
+        Integer errorCode,
+
+        @JsonProperty("description")
+        String description,
+
+        @JsonProperty("parameters")
+        ResponseParameters parameters) {
+}
@@ -0,0 +1,12 @@
+package org.competition.stepbot.telegram.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public record User(
+        @JsonProperty("id")
+        long id,
+
+        @JsonProperty("username")
+        String username
+) {
+}
@@ -1,4 +1,10 @@
 package org.competition.stepbot.telegram.exceptions;
 
-public record ErrorStrBox(String excMessage, String userMessage) {
+/**
+ * @param excMessage сообщение исключения (для логов)
+ * @param userMessage что написать пользователю
+ * @param reason короткий постоянный код причины, по которому ошибки группируются в метриках (тег не должен зависеть
+ *               от текста сообщения)
+ */
+public record ErrorStrBox(String excMessage, String userMessage, String reason) {
 }
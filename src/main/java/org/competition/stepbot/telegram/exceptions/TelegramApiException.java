@@ -0,0 +1,45 @@
+package org.competition.stepbot.telegram.exceptions;
+
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * <p>Ошибка, которую вернул <i>Telegram</i> в ответ на вызов метода Bot API.</p>
+ */
+@Getter
+public class TelegramApiException extends RuntimeException {
+    private final int errorCode;
+    private final String description;
+    /// Сколько нужно подождать перед повторной отправкой (есть только у ответов с кодом 429), иначе null
+    private final Duration retryAfter;
+    /// Новый id чата, если группа была преобразована в супергруппу, иначе null
+    private final Long migrateToChatId;
+
+    public TelegramApiException(int errorCode, String description, Duration retryAfter, Long migrateToChatId) {
+        super("Telegram error " + errorCode + ": " + description);
+        this.errorCode = errorCode;
+        this.description = description;
+        this.retryAfter = retryAfter;
+        this.migrateToChatId = migrateToChatId;
+    }
+
+    public TelegramApiException(int errorCode, String description) {
+        this(errorCode, description, null, null);
+    }
+
+    /// Проверка: просит ли <i>Telegram</i> повторить запрос позже (слишком много запросов)
+    public boolean isTooManyRequests() {
+        return errorCode == 429 && retryAfter != null;
+    }
+
+    /// Проверка: отказ изменить сообщение, потому что новый текст совпадает со старым
+    public boolean isMessageNotModified() {
+        return errorCode == 400 && description != null && description.contains("message is not modified");
+    }
+
+    /// Проверка: чат переехал (группа стала супергруппой), и запрос нужно отправить в {@link #getMigrateToChatId()}
+    public boolean isChatMigrated() {
+        return migrateToChatId != null;
+    }
+}
@@ -4,18 +4,25 @@ import lombok.Getter;
 
 @Getter
 public class UserError extends RuntimeException {
+    /// Причина ошибки для метрик, когда ошибка создана не из {@link ErrorStrBox}
+    public static final String CUSTOM_REASON = "custom";
+
     private final long chatId;
     private final String userMessage;
+    /// Код причины ошибки ({@link ErrorStrBox#reason()}), по которому ошибки группируются в метриках
+    private final String reason;
 
     public UserError(long chatId, String message, String userMessage) {
         super(message);
         this.chatId = chatId;
         this.userMessage = userMessage;
+        this.reason = CUSTOM_REASON;
     }
 
     public UserError(long chatId, ErrorStrBox errorStrBox) {
         super(errorStrBox.excMessage());
         this.chatId = chatId;
         this.userMessage = errorStrBox.userMessage();
+        this.reason = errorStrBox.reason();
     }
 }
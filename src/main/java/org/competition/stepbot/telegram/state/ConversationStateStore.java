@@ -0,0 +1,30 @@
+package org.competition.stepbot.telegram.state;
+
+import org.competition.stepbot.telegram.commands.Command;
+
+import java.util.function.BiConsumer;
+
+/**
+ * <p>Хранилище состояния диалогов: какая многошаговая команда сейчас выполняется в каждом чате
+ * (см. {@link org.competition.stepbot.telegram.commands.CommandResult.NextStep}).</p>
+ *
+ * <p>Реализации должны быть потокобезопасными. Изменения одного чата приходят последовательно
+ * (см. {@link org.competition.stepbot.telegram.ChatMailboxes}), разных чатов — параллельно.</p>
+ */
+public interface ConversationStateStore {
+
+    /// Текущая команда чата или null, если в чате нет незавершённого диалога
+    Command get(long chatId);
+
+    /// Запоминает, что следующее сообщение чата должно попасть в команду command
+    void put(long chatId, Command command);
+
+    /// Завершает диалог в чате
+    void remove(long chatId);
+
+    /// Количество чатов с незавершённым диалогом
+    int size();
+
+    /// Перебирает все незавершённые диалоги (например, восстановленные после перезапуска)
+    void forEach(BiConsumer<Long, Command> action);
+}
@@ -0,0 +1,44 @@
+package org.competition.stepbot.telegram.state;
+
+import org.competition.stepbot.telegram.commands.Command;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
+
+/**
+ * <p>Состояние диалогов только в памяти: теряется при перезапуске. Включается настройкой
+ * <code>bot.state.store=memory</code>.</p>
+ */
+@Component
+@ConditionalOnProperty(name = "bot.state.store", havingValue = "memory", matchIfMissing = true)
+public class InMemoryStateStore implements ConversationStateStore {
+    private final ConcurrentMap<Long, Command> currentCommand = new ConcurrentHashMap<>();
+
+    @Override
+    public Command get(long chatId) {
+        return currentCommand.get(chatId);
+    }
+
+    @Override
+    public void put(long chatId, Command command) {
+        currentCommand.put(chatId, command);
+    }
+
+    @Override
+    public void remove(long chatId) {
+        currentCommand.remove(chatId);
+    }
+
+    @Override
+    public int size() {
+        return currentCommand.size();
+    }
+
+    @Override
+    public void forEach(BiConsumer<Long, Command> action) {
+        currentCommand.forEach(action);
+    }
+}
@@ -0,0 +1,338 @@
+package org.competition.stepbot.telegram.state;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.competition.stepbot.telegram.commands.Command;
+import org.competition.stepbot.telegram.commands.CommandRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * <p>Состояние диалогов, которое переживает перезапуск и падение приложения без базы данных. Текущее состояние
+ * хранится в памяти, а каждый переход (начало шага или завершение диалога) дописывается в бинарный журнал.
+ * Команды записываются не ссылками, а по имени ({@link Command#name()}), и при запуске снова находятся
+ * через {@link CommandRegistry}.</p>
+ *
+ * <p>Формат записи: <code>[crc32 int][тип byte][chatId long][длина имени short][имя UTF-8]</code>.
+ * Записи сначала копятся в буфере и раз в {@code bot.state.flush-ms} пишутся в файл одним вызовом с одним
+ * <code>fsync</code> (group commit), поэтому при падении теряются только переходы за последний интервал.
+ * Оборванная или повреждённая запись в конце журнала (проверяется по crc) при чтении отбрасывается.</p>
+ *
+ * <p>Когда мёртвых записей в журнале становится намного больше, чем живых, журнал сжимается: во временный файл
+ * записываются только текущие диалоги, и он атомарно заменяет журнал.</p>
+ *
+ * <p>Если запись в файл не удалась, записи остаются в буфере и пишутся при следующем сбросе: файл обрезается до
+ * последнего успешно записанного байта (при необходимости открывается заново). Если не удалось сжатие, журнал
+ * остаётся прежним, а записи дописываются в него как обычно.</p>
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "bot.state.store", havingValue = "journal")
+public class JournalStateStore implements ConversationStateStore {
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    private static final int HEADER_SIZE = Integer.BYTES + Byte.BYTES + Long.BYTES + Short.BYTES;
+    private static final int MIN_RECORDS_TO_COMPACT = 1024;
+
+    private final ConcurrentMap<Long, Command> currentCommand = new ConcurrentHashMap<>();
+    private final Path journalPath;
+    private final CRC32 crc = new CRC32(); // используется только под блокировкой this
+
+    /// Записи, которые ещё не записаны в файл (доступ только под блокировкой this)
+    private ByteBuffer pending = ByteBuffer.allocate(4096);
+    private ByteBuffer spare = ByteBuffer.allocate(4096);
+    /// Количество записей в журнале (в файле и в буфере); доступ только под блокировкой this
+    private long journalRecords;
+    /// Файл журнала (null — его нужно открыть заново); используется только под блокировкой flushLock
+    private FileChannel channel;
+    /// Длина журнала, записанная и сброшенная на диск; используется только под блокировкой flushLock
+    private long committedSize;
+    private final Object flushLock = new Object();
+
+    public JournalStateStore(CommandRegistry commandRegistry, @Value("${bot.data-dir:data}") Path dataDir) {
+        this.journalPath = dataDir.resolve("conversation.journal");
+        try {
+            Files.createDirectories(dataDir);
+            long validBytes = replay(commandRegistry);
+            channel = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            channel.truncate(validBytes); // отбрасывает оборванную запись в конце, если она есть
+            channel.position(validBytes);
+            committedSize = validBytes;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open conversation journal " + journalPath, e);
+        }
+        log.info("Conversation journal {} is replayed: {} active dialogs", journalPath, currentCommand.size());
+    }
+
+    @Override
+    public Command get(long chatId) {
+        return currentCommand.get(chatId);
+    }
+
+    @Override
+    public synchronized void put(long chatId, Command command) {
+        currentCommand.put(chatId, command);
+        append(PUT, chatId, command.name());
+    }
+
+    @Override
+    public synchronized void remove(long chatId) {
+        if (currentCommand.remove(chatId) != null) {
+            append(REMOVE, chatId, "");
+        }
+    }
+
+    @Override
+    public int size() {
+        return currentCommand.size();
+    }
+
+    @Override
+    public void forEach(BiConsumer<Long, Command> action) {
+        currentCommand.forEach(action);
+    }
+
+    /**
+     * <p>Записывает накопленные записи в файл и делает <code>fsync</code>. Если журнал слишком разросся,
+     * вместо этого сжимает его (а если сжать не удалось — всё-таки дописывает записи).</p>
+     */
+    @Scheduled(fixedDelayString = "${bot.state.flush-ms:200}")
+    public void flush() {
+        synchronized (flushLock) {
+            flushLocked(true);
+        }
+    }
+
+    private void flushLocked(boolean allowCompaction) {
+        ByteBuffer snapshot = null;
+        ByteBuffer toWrite;
+        long recordsBefore;
+        int snapshotRecords;
+        synchronized (this) {
+            if (pending.position() == 0 && !(allowCompaction && needsCompaction())) {
+                return;
+            }
+            if (allowCompaction && needsCompaction()) {
+                snapshot = ByteBuffer.allocate(4096);
+                for (Map.Entry<Long, Command> entry : currentCommand.entrySet()) {
+                    snapshot = encode(snapshot, PUT, entry.getKey(), entry.getValue().name());
+                }
+            }
+            // Все изменения из буфера есть в снимке; если сжатие не удастся, они будут записаны обычным образом
+            toWrite = pending;
+            pending = spare;
+            spare = toWrite;
+            toWrite.flip();
+            recordsBefore = journalRecords;
+            snapshotRecords = currentCommand.size();
+        }
+
+        try {
+            if (snapshot != null) {
+                snapshot.flip();
+                compact(snapshot);
+                synchronized (this) {
+                    journalRecords = journalRecords - recordsBefore + snapshotRecords;
+                }
+            } else {
+                openIfClosed();
+                while (toWrite.hasRemaining()) {
+                    channel.write(toWrite);
+                }
+                channel.force(false);
+                committedSize = channel.position();
+            }
+            toWrite.clear();
+        } catch (IOException e) {
+            log.error("Failed to write conversation journal, records are kept for the next attempt", e);
+            restorePending(toWrite);
+            if (snapshot == null) {
+                rollBack();
+            } else {
+                flushLocked(false);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        synchronized (flushLock) {
+            flushLocked(true);
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+
+    private boolean needsCompaction() {
+        return journalRecords > MIN_RECORDS_TO_COMPACT && journalRecords > 4L * currentCommand.size();
+    }
+
+    /// Возвращает незаписанные записи в начало буфера, перед записями, добавленными во время сброса
+    private synchronized void restorePending(ByteBuffer unwritten) {
+        unwritten.rewind();
+        ByteBuffer merged = ByteBuffer.allocate(Math.max(4096, unwritten.remaining() + pending.position()));
+        merged.put(unwritten);
+        pending.flip();
+        merged.put(pending);
+        pending.clear();
+        unwritten.clear();
+        pending = merged;
+    }
+
+    /// Обрезает журнал до последнего успешно записанного байта (запись могла оборваться на середине)
+    private void rollBack() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.truncate(committedSize);
+            channel.position(committedSize);
+        } catch (IOException e) {
+            log.error("Failed to roll back conversation journal, it will be reopened", e);
+            closeQuietly();
+        }
+    }
+
+    /// Открывает журнал заново, если предыдущий канал закрыт из-за ошибки
+    private void openIfClosed() throws IOException {
+        if (channel != null && channel.isOpen()) {
+            return;
+        }
+        channel = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        channel.truncate(committedSize);
+        channel.position(committedSize);
+    }
+
+    private void closeQuietly() {
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            log.debug("Failed to close conversation journal", e);
+        }
+        channel = null;
+    }
+
+    private void append(byte type, long chatId, String commandName) {
+        pending = encode(pending, type, chatId, commandName);
+        journalRecords++;
+    }
+
+    /**
+     * <p>Дописывает запись в буфер (вызывается только под блокировкой this).</p>
+     *
+     * @return буфер с записью: тот же самый или больший, если в старом не хватило места
+     */
+    private ByteBuffer encode(ByteBuffer buffer, byte type, long chatId, String commandName) {
+        byte[] name = commandName.getBytes(StandardCharsets.UTF_8);
+        int size = HEADER_SIZE + name.length;
+        if (buffer.remaining() < size) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + size));
+            buffer.flip();
+            bigger.put(buffer);
+            buffer = bigger;
+        }
+        int start = buffer.position();
+        buffer.position(start + Integer.BYTES);
+        buffer.put(type).putLong(chatId).putShort((short) name.length).put(name);
+
+        crc.reset();
+        crc.update(buffer.array(), start + Integer.BYTES, size - Integer.BYTES);
+        buffer.putInt(start, (int) crc.getValue());
+        return buffer;
+    }
+
+    /**
+     * <p>Записывает снимок текущих диалогов во временный файл и атомарно заменяет им журнал. Пока журнал не заменён,
+     * старый канал остаётся открытым, поэтому при ошибке журнал можно продолжать дописывать.</p>
+     */
+    private void compact(ByteBuffer snapshot) throws IOException {
+        Path tmp = journalPath.resolveSibling(journalPath.getFileName() + ".tmp");
+        long size = snapshot.remaining();
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (snapshot.hasRemaining()) {
+                out.write(snapshot);
+            }
+            out.force(false);
+        }
+        Files.move(tmp, journalPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // Журнал уже заменён снимком: старый канал указывает на удалённый файл, новый откроется при следующей записи
+        closeQuietly();
+        committedSize = size;
+        log.info("Conversation journal is compacted");
+    }
+
+    /**
+     * <p>Восстанавливает состояние из журнала.</p>
+     *
+     * @return сколько байт в начале журнала содержат целые записи
+     */
+    private long replay(CommandRegistry commandRegistry) throws IOException {
+        if (!Files.exists(journalPath)) {
+            return 0;
+        }
+        try (FileChannel in = FileChannel.open(journalPath, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            CRC32 check = new CRC32();
+            long records = 0;
+            while (buffer.remaining() >= HEADER_SIZE) {
+                int start = buffer.position();
+                int storedCrc = buffer.getInt();
+                byte type = buffer.get();
+                long chatId = buffer.getLong();
+                int nameLength = Short.toUnsignedInt(buffer.getShort());
+                if (buffer.remaining() < nameLength) {
+                    buffer.position(start);
+                    break;
+                }
+                byte[] name = new byte[nameLength];
+                buffer.get(name);
+
+                check.reset();
+                check.update(buffer.slice(start + Integer.BYTES, HEADER_SIZE - Integer.BYTES + nameLength));
+                if ((int) check.getValue() != storedCrc) {
+                    log.warn("Conversation journal is corrupted at byte {}, the rest is dropped", start);
+                    buffer.position(start);
+                    break;
+                }
+
+                records++;
+                if (type == PUT) {
+                    String commandName = new String(name, StandardCharsets.UTF_8);
+                    Command command = commandRegistry.find(commandName);
+                    if (command == null) {
+                        log.warn("Command {} from journal no longer exists", commandName);
+                        currentCommand.remove(chatId);
+                    } else {
+                        currentCommand.put(chatId, command);
+                    }
+                } else {
+                    currentCommand.remove(chatId);
+                }
+            }
+            journalRecords = records;
+            return buffer.position();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package org.competition.stepbot.telegram.state;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.competition.stepbot.telegram.ChatMailboxes;
+import org.competition.stepbot.telegram.TelegramBot;
+import org.competition.stepbot.telegram.commands.Command;
+import org.competition.stepbot.telegram.commands.CommandResult;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>Завершает диалоги, в которых пользователь долго ничего не отправлял. Без этого незавершённый диалог висел бы в
+ * {@link ConversationStateStore} вечно, и следующее сообщение пользователя (даже через месяц) попало бы
+ * в старую команду.</p>
+ *
+ * <p>Сроки хранятся в хешированном колесе таймеров: время разбито на тики по {@code bot.session.tick-ms}, и чат
+ * кладётся в ячейку колеса <code>срок % размер колеса</code>. Планирование и отмена — O(1), на каждом тике
+ * просматривается только одна ячейка. При продлении срока чат не удаляется из старой ячейки: когда до неё дойдёт
+ * очередь, устаревшая запись будет просто выброшена (настоящий срок хранится в {@link #deadlines}). Если срок
+ * продлён в ту же ячейку, пока она обрабатывается, чат возвращается в неё (см. {@link #tick()}).</p>
+ *
+ * <p>Сам диалог завершается через очередь чата ({@link ChatMailboxes}), поэтому не может завершиться посреди
+ * обработки нового сообщения пользователя.</p>
+ */
+@Slf4j
+@Component
+public class SessionExpiry {
+    private final ConversationStateStore stateStore;
+    private final ChatMailboxes chatMailboxes;
+    private final TelegramBot telegramBot;
+    private final Duration defaultTimeout;
+    private final long tickMillis;
+    private final boolean notifyOnExpiry;
+
+    private final Set<Long>[] wheel;
+    private final int mask;
+    /// Тик, на котором истекает диалог чата
+    private final ConcurrentMap<Long, Long> deadlines = new ConcurrentHashMap<>();
+    /// Номер текущего тика (увеличивается только в {@link #tick()})
+    private volatile long currentTick;
+
+    @SuppressWarnings("unchecked")
+    public SessionExpiry(ConversationStateStore stateStore, ChatMailboxes chatMailboxes, TelegramBot telegramBot,
+                         @Value("${bot.session.idle-timeout:PT30M}") Duration defaultTimeout,
+                         @Value("${bot.session.tick-ms:1000}") long tickMillis,
+                         @Value("${bot.session.wheel-size:512}") int wheelSize,
+                         @Value("${bot.session.notify-on-expiry:true}") boolean notifyOnExpiry) {
+        this.stateStore = stateStore;
+        this.chatMailboxes = chatMailboxes;
+        this.telegramBot = telegramBot;
+        this.defaultTimeout = defaultTimeout;
+        this.tickMillis = tickMillis;
+        this.notifyOnExpiry = notifyOnExpiry;
+
+        int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        this.wheel = new Set[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = ConcurrentHashMap.newKeySet();
+        }
+        this.mask = size - 1;
+    }
+
+    /// Планирует завершение диалогов, которые были восстановлены из хранилища после перезапуска
+    @PostConstruct
+    void scheduleRestored() {
+        stateStore.forEach(this::touch);
+    }
+
+    /**
+     * <p>Обновляет срок диалога после того, как команда вернула результат: после {@link CommandResult.NextStep}
+     * отсчёт начинается заново, после {@link CommandResult.Finish} срок удаляется.</p>
+     */
+    public void onStateUpdate(long chatId, CommandResult result) {
+        if (result instanceof CommandResult.NextStep) {
+            touch(chatId, result.currentCommand());
+        } else if (result instanceof CommandResult.Finish) {
+            deadlines.remove(chatId);
+        }
+    }
+
+    /// Количество диалогов, для которых запланировано завершение
+    public int trackedSessions() {
+        return deadlines.size();
+    }
+
+    private void touch(long chatId, Command command) {
+        Duration timeout = command.idleTimeout() != null ? command.idleTimeout() : defaultTimeout;
+        long ticks = Math.max(1, (timeout.toMillis() + tickMillis - 1) / tickMillis);
+        long deadline = currentTick + ticks;
+        deadlines.put(chatId, deadline);
+        wheel[(int) (deadline & mask)].add(chatId);
+    }
+
+    /// Один оборот стрелки: обрабатывает ячейку колеса, соответствующую новому тику
+    @Scheduled(fixedRateString = "${bot.session.tick-ms:1000}")
+    public void tick() {
+        long now = ++currentTick;
+        int index = (int) (now & mask);
+        Iterator<Long> slot = wheel[index].iterator();
+        while (slot.hasNext()) {
+            Long chatId = slot.next();
+            Long deadline = deadlines.get(chatId);
+            if (deadline != null && deadline > now && (deadline & mask) == index) {
+                continue; // срок в этой же ячейке, но на одном из следующих оборотов колеса
+            }
+            slot.remove(); // срок истёк, диалог завершён или срок продлён (чат уже лежит в другой ячейке)
+            if (deadline != null && deadline <= now && deadlines.remove(chatId, deadline)) {
+                expire(chatId);
+                continue;
+            }
+            // touch() мог продлить срок в эту же ячейку после чтения deadline выше: он кладёт чат в ячейку, где
+            // чат тогда ещё был, и удаление выше его бы потеряло. touch() записывает срок до ячейки, поэтому
+            // повторное чтение срока после удаления видит такое продление
+            Long current = deadlines.get(chatId);
+            if (current != null && (current & mask) == index) {
+                wheel[index].add(chatId);
+            }
+        }
+    }
+
+    private void expire(long chatId) {
+        chatMailboxes.submit(chatId, () -> {
+            Command command = stateStore.get(chatId);
+            if (command == null || deadlines.containsKey(chatId)) { // пока ждали очереди, пришло новое сообщение
+                return Mono.empty();
+            }
+            log.debug("Dialog of command {} in chat {} is expired", command, chatId);
+            stateStore.remove(chatId);
+            String notice = command.expiryNotice();
+            if (!notifyOnExpiry || notice == null || notice.isEmpty()) {
+                return Mono.empty();
+            }
+            return telegramBot.sendMessage(chatId, notice).then();
+        }).subscribe(null, err -> log.error("Failed to expire dialog in chat {}", chatId, err));
+    }
+}
@@ -0,0 +1,134 @@
+package org.competition.stepbot.googlefit;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.competition.stepbot.Values.JSON_MAPPER;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * <p>Проверка {@link GoogleFitClient} на локальной заглушке Fitness API и сервера авторизации.
+ * Заглушка возвращает за каждый день <code>1000 + номер дня месяца</code> шагов.</p>
+ */
+class GoogleFitClientTests {
+    private static final LocalDate TODAY = LocalDate.of(2026, 10, 17);
+    private static final Clock CLOCK = Clock.fixed(Instant.parse("2026-10-17T12:00:00Z"), ZoneOffset.UTC);
+
+    private final List<LocalDate> requestedStarts = new CopyOnWriteArrayList<>();
+    private final AtomicInteger tokenRequests = new AtomicInteger();
+    /// Ответы, которые заглушка вернёт вместо данных (по одному на запрос)
+    private final List<Integer> failures = new CopyOnWriteArrayList<>();
+    private DisposableServer server;
+    private GoogleFitClient client;
+
+    @BeforeEach
+    void startStub() {
+        server = HttpServer.create().host("127.0.0.1").port(0)
+                .route(routes -> routes
+                        .post("/token", (request, response) -> request.receive().then(Mono.defer(() -> {
+                            int n = tokenRequests.incrementAndGet();
+                            return response.header("Content-Type", "application/json")
+                                    .sendString(Mono.just("{\"access_token\":\"token-" + n + "\",\"expires_in\":3600}"))
+                                    .then();
+                        })))
+                        .post("/fitness/v1/users/me/dataset:aggregate", (request, response) -> request.receive()
+                                .aggregate().asString()
+                                .flatMap(body -> {
+                                    String auth = request.requestHeaders().get("Authorization");
+                                    if (!failures.isEmpty()) {
+                                        int status = failures.remove(0);
+                                        return response.status(status).send().then();
+                                    }
+                                    return response.header("Content-Type", "application/json")
+                                            .sendString(Mono.just(buckets(readTree(body), auth))).then();
+                                })))
+                .bindNow();
+        String url = "http://127.0.0.1:" + server.port();
+        client = new GoogleFitClient(url, url + "/token", "id", "secret", ZoneOffset.UTC,
+                Duration.ofHours(2), 4, 3, CLOCK);
+    }
+
+    @AfterEach
+    void stopStub() {
+        server.disposeNow();
+    }
+
+    @Test
+    void pastDaysAreFetchedOnce() {
+        LocalDate from = TODAY.minusDays(7);
+        StepsSnapshot first = client.sync(new FitParticipant(1, "refresh"), from).block();
+        StepsSnapshot second = client.sync(new FitParticipant(1, "refresh"), from).block();
+
+        assertNotNull(first);
+        assertNotNull(second);
+        assertEquals(8, first.dailySteps().length);
+        assertEquals(1010, first.dailySteps()[0]);
+        assertEquals(1017, first.dailySteps()[7]);
+        assertArrayEquals(first.dailySteps(), second.dailySteps());
+        assertEquals(List.of(from, TODAY), requestedStarts);
+        assertEquals(1, tokenRequests.get());
+    }
+
+    @Test
+    void expiredTokenIsRefreshedAndServerErrorsAreRetried() {
+        failures.addAll(List.of(401, 503, 429));
+        StepsSnapshot snapshot = client.sync(new FitParticipant(1, "refresh"), TODAY).block();
+
+        assertNotNull(snapshot);
+        assertEquals(1017, snapshot.total());
+        assertEquals(2, tokenRequests.get());
+    }
+
+    @Test
+    void participantsAreSyncedInParallel() {
+        List<FitParticipant> participants = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            participants.add(new FitParticipant(i, "refresh-" + i));
+        }
+        List<StepsSnapshot> snapshots = client.sync(participants, TODAY.minusDays(1)).collectList().block();
+
+        assertNotNull(snapshots);
+        assertEquals(20, snapshots.size());
+        snapshots.forEach(snapshot -> assertEquals(1016 + 1017, snapshot.total()));
+    }
+
+    private String buckets(JsonNode request, String auth) {
+        assertTrue(auth.startsWith("Bearer token-"));
+        long start = request.path("startTimeMillis").asLong();
+        long end = request.path("endTimeMillis").asLong();
+        requestedStarts.add(Instant.ofEpochMilli(start).atZone(ZoneOffset.UTC).toLocalDate());
+
+        List<Object> buckets = new ArrayList<>();
+        for (long day = start; day < end; day += Duration.ofDays(1).toMillis()) {
+            int steps = 1000 + Instant.ofEpochMilli(day).atZone(ZoneOffset.UTC).getDayOfMonth();
+            buckets.add(Map.of(
+                    "startTimeMillis", String.valueOf(day),
+                    "dataset", List.of(Map.of("point", List.of(Map.of("value", List.of(Map.of("intVal", steps))))))));
+        }
+        return JSON_MAPPER.valueToTree(Map.of("bucket", buckets)).toString();
+    }
+
+    private static JsonNode readTree(String body) {
+        try {
+            return JSON_MAPPER.readTree(body);
+        } catch (Exception e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+}
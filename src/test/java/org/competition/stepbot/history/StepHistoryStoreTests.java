@@ -0,0 +1,82 @@
+package org.competition.stepbot.history;
+
+import org.competition.stepbot.googlefit.StepsSnapshot;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StepHistoryStoreTests {
+    private static final LocalDate START = LocalDate.of(2025, 6, 1);
+
+    @Test
+    void historySurvivesRestartAndGrows(@TempDir Path dir) {
+        StepHistoryStore store = new StepHistoryStore(dir, 30);
+        for (long chatId = 1; chatId <= 200; chatId++) { // больше начальной ёмкости файла
+            store.put(new StepsSnapshot(chatId, START, new int[]{1000, 2000, (int) chatId}));
+        }
+        store.put(7, START.plusDays(2), 5000); // сегодняшний день перезаписывается
+        store.close();
+
+        StepHistoryStore restarted = new StepHistoryStore(dir, 30);
+        assertEquals(200, restarted.size());
+        assertEquals(8000, restarted.sum(7, START, START.plusDays(29)));
+        assertEquals(2200, restarted.sum(200, START.plusDays(1), START.plusDays(2)));
+        assertEquals(2000, restarted.get(42, START.plusDays(1)));
+        assertEquals(0, restarted.sum(404, START, START.plusDays(2)));
+
+        restarted.put(201, START, 1); // новый участник после роста файла и перезапуска
+        restarted.close();
+        StepHistoryStore again = new StepHistoryStore(dir, 30);
+        assertEquals(201, again.size());
+        assertEquals(1, again.get(201, START));
+        assertEquals(3, again.get(3, START.plusDays(2)));
+        again.close();
+    }
+
+    @Test
+    void windowRollsForwardAndKeepsLastDays(@TempDir Path dir) {
+        StepHistoryStore store = new StepHistoryStore(dir, 7);
+        for (int day = 0; day < 7; day++) {
+            store.put(1, START.plusDays(day), 100);
+        }
+        store.put(1, START.plusDays(9), 900); // окно сдвигается на 3 дня, дни 7 и 8 пустые
+
+        assertEquals(0, store.sum(1, START, START.plusDays(2)), "days out of the window are dropped");
+        assertEquals(400, store.sum(1, START.plusDays(3), START.plusDays(6)));
+        assertEquals(0, store.get(1, START.plusDays(7)));
+        assertEquals(1300, store.sum(1, START, START.plusDays(9)));
+
+        store.put(1, START.plusDays(1000), 5); // намного дальше окна — вся старая история пропадает
+        assertEquals(5, store.sum(1, START, START.plusDays(1000)));
+        store.close();
+
+        StepHistoryStore restarted = new StepHistoryStore(dir, 366); // ширина слота берётся из файла
+        assertEquals(5, restarted.get(1, START.plusDays(1000)));
+        restarted.put(1, START.plusDays(994), 6); // самый ранний день окна ещё можно записать
+        assertEquals(11, restarted.sum(1, START, START.plusDays(1000)));
+        restarted.close();
+    }
+
+    @Test
+    void daysBeforeWindowAreRejectedWithoutPartialWrites(@TempDir Path dir) {
+        StepHistoryStore store = new StepHistoryStore(dir, 7);
+        store.put(new StepsSnapshot(1, START.plusDays(10), new int[]{10, 20}));
+
+        assertThrows(IllegalArgumentException.class, () -> store.put(1, START.plusDays(4), 1));
+        // Последние дни снимка в окне, но первый нет — снимок не записывается целиком
+        assertThrows(IllegalArgumentException.class,
+                () -> store.put(new StepsSnapshot(1, START.plusDays(4), new int[]{1, 1, 1, 1, 1, 1, 1, 1})));
+        assertEquals(30, store.sum(1, START, START.plusDays(20)));
+        // Снимок длиннее окна не помещается даже у нового участника
+        assertThrows(IllegalArgumentException.class, () -> store.put(new StepsSnapshot(2, START, new int[8])));
+        assertEquals(1, store.size());
+
+        store.put(1, START.plusDays(5), 5); // первый день окна
+        assertEquals(35, store.sum(1, START, START.plusDays(20)));
+        store.close();
+    }
+}
@@ -0,0 +1,187 @@
+package org.competition.stepbot.leaderboard;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.competition.stepbot.metrics.BotMetrics;
+import org.competition.stepbot.telegram.StubTelegramServer;
+import org.competition.stepbot.telegram.TelegramBot;
+import org.competition.stepbot.telegram.UsernameIndex;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Mono;
+
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LeaderboardBroadcasterTests {
+    @TempDir
+    Path dataDir;
+
+    private final AtomicLong nextMessageId = new AtomicLong(100);
+    private StubTelegramServer stub;
+    private Leaderboard leaderboard;
+    private UsernameIndex usernames;
+    private LeaderboardBroadcaster broadcaster;
+
+    @BeforeEach
+    void setUp() {
+        stub = new StubTelegramServer()
+                .on("sendMessage", body -> Mono.just(message(body, nextMessageId.incrementAndGet())))
+                .on("editMessageText", body -> Mono.just(message(body, body.path("message_id").asLong())));
+        BotMetrics metrics = new BotMetrics(new SimpleMeterRegistry());
+        TelegramBot telegramBot = stub.telegramBot(metrics);
+        leaderboard = new Leaderboard();
+        usernames = new UsernameIndex(100, dataDir);
+        broadcaster = new LeaderboardBroadcaster(leaderboard, telegramBot, usernames, 2, 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        stub.close();
+    }
+
+    @Test
+    void tableIsSentOnceThenEditedOnlyWhenChanged() throws Exception {
+        leaderboard.set(1, 300);
+        leaderboard.set(2, 200);
+        broadcaster.broadcast().block();
+        Set<Long> chats = new HashSet<>();
+        for (int i = 0; i < 2; i++) {
+            StubTelegramServer.Request request = nextRequest();
+            assertEquals("sendMessage", request.method());
+            chats.add(request.body().path("chat_id").asLong());
+        }
+        assertEquals(Set.of(1L, 2L), chats);
+
+        broadcaster.broadcast().block();
+        assertEquals(2, broadcaster.skippedCount());
+        assertNull(stub.requests().poll(200, TimeUnit.MILLISECONDS), "Unchanged tables must not be sent");
+
+        leaderboard.set(2, 400);
+        broadcaster.broadcast().block();
+        for (int i = 0; i < 2; i++) {
+            StubTelegramServer.Request request = nextRequest();
+            assertEquals("editMessageText", request.method());
+            assertTrue(request.body().path("message_id").asLong() > 100);
+        }
+    }
+
+    @Test
+    void participantWhoLeftIsForgotten() throws Exception {
+        leaderboard.set(1, 300);
+        leaderboard.set(2, 200);
+        broadcaster.broadcast().block();
+        nextRequest();
+        nextRequest();
+        assertEquals(2, broadcaster.renderedCount());
+
+        leaderboard.remove(2);
+        broadcaster.broadcast().block();
+        StubTelegramServer.Request edit = nextRequest();
+        assertEquals("editMessageText", edit.method());
+        assertEquals(1, edit.body().path("chat_id").asLong());
+        assertNull(stub.requests().poll(200, TimeUnit.MILLISECONDS), "Chat that left must not be edited");
+        assertEquals(1, broadcaster.renderedCount());
+
+        // Вернувшийся участник получает новое сообщение, а не правку старого
+        leaderboard.set(2, 100);
+        broadcaster.broadcast().block();
+        Set<String> methods = new HashSet<>();
+        for (int i = 0; i < 2; i++) {
+            StubTelegramServer.Request request = nextRequest();
+            methods.add(request.method() + ":" + request.body().path("chat_id").asLong());
+        }
+        assertEquals(Set.of("editMessageText:1", "sendMessage:2"), methods);
+    }
+
+    @Test
+    void failedEditFallsBackToNewMessage() throws Exception {
+        leaderboard.set(1, 300);
+        broadcaster.broadcast().block();
+        assertEquals("sendMessage", nextRequest().method());
+
+        stub.on("editMessageText", body ->
+                Mono.just(StubTelegramServer.error(400, "Bad Request: message to edit not found")));
+        leaderboard.set(1, 500);
+        broadcaster.broadcast().block();
+        assertEquals("editMessageText", nextRequest().method());
+        StubTelegramServer.Request resent = nextRequest();
+        assertEquals("sendMessage", resent.method());
+        assertTrue(resent.body().path("text").asText().contains("500"));
+
+        // Следующее изменение правит уже новое сообщение
+        stub.on("editMessageText", body -> Mono.just(message(body, body.path("message_id").asLong())));
+        leaderboard.set(1, 700);
+        broadcaster.broadcast().block();
+        StubTelegramServer.Request edit = nextRequest();
+        assertEquals("editMessageText", edit.method());
+        assertEquals(102, edit.body().path("message_id").asLong());
+    }
+
+    @Test
+    void renderShowsTopAndNeighboursAndToleratesMissingParticipant() {
+        for (long chatId = 1; chatId <= 6; chatId++) {
+            leaderboard.set(chatId, chatId * 100);
+            usernames.record("Runner" + chatId, chatId);
+        }
+
+        assertEquals("""
+                Таблица участников
+                1. @runner6 — 600 шагов
+                2. @runner5 — 500 шагов
+                …
+                4. @runner3 — 300 шагов
+                5. @runner2 — 200 шагов (вы)
+                6. @runner1 — 100 шагов
+                """, broadcaster.render(2));
+        assertEquals("""
+                Таблица участников
+                1. @runner6 — 600 шагов
+                2. @runner5 — 500 шагов
+                3. @runner4 — 400 шагов (вы)
+                4. @runner3 — 300 шагов
+                """, broadcaster.render(4));
+        // Участник убран из таблицы (например, во время рассылки) — остаются только первые места
+        assertEquals("""
+                Таблица участников
+                1. @runner6 — 600 шагов
+                2. @runner5 — 500 шагов
+                """, broadcaster.render(42));
+    }
+
+    @Test
+    void participantWithoutUsernameIsShownWithoutChatId() {
+        leaderboard.set(123456789, 300);
+        leaderboard.set(2, 200);
+        usernames.record("walker", 2);
+
+        String table = broadcaster.render(2);
+        assertEquals("""
+                Таблица участников
+                1. Участник — 300 шагов
+                2. @walker — 200 шагов (вы)
+                """, table);
+        assertFalse(table.contains("123456789"));
+    }
+
+    private StubTelegramServer.Request nextRequest() throws InterruptedException {
+        StubTelegramServer.Request request = stub.requests().poll(5, TimeUnit.SECONDS);
+        assertNotNull(request, "Stub server did not receive a request in time");
+        return request;
+    }
+
+    private static Object message(JsonNode body, long messageId) {
+        return Map.of(
+                "message_id", messageId,
+                "text", body.path("text").asText(),
+                "chat", Map.of("id", body.path("chat_id").asLong()));
+    }
+}
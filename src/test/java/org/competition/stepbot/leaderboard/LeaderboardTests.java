@@ -0,0 +1,77 @@
+package org.competition.stepbot.leaderboard;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LeaderboardTests {
+
+    @Test
+    void matchesFullSortUnderRandomUpdates() {
+        Leaderboard leaderboard = new Leaderboard();
+        Map<Long, Long> totals = new HashMap<>();
+        Random random = new Random(7);
+
+        for (int step = 0; step < 20_000; step++) {
+            long chatId = random.nextInt(300);
+            int operation = random.nextInt(10);
+            if (operation == 0) {
+                leaderboard.remove(chatId);
+                totals.remove(chatId);
+            } else if (operation < 4) {
+                long total = random.nextInt(50); // много одинаковых сумм
+                leaderboard.set(chatId, total);
+                totals.put(chatId, total);
+            } else {
+                long delta = random.nextInt(1000);
+                leaderboard.add(chatId, delta);
+                totals.merge(chatId, delta, Long::sum);
+            }
+
+            if (step % 500 == 0) {
+                assertMatches(totals, leaderboard);
+            }
+        }
+        assertMatches(totals, leaderboard);
+    }
+
+    @Test
+    void neighboursAroundParticipant() {
+        Leaderboard leaderboard = new Leaderboard();
+        for (long chatId = 1; chatId <= 10; chatId++) {
+            leaderboard.set(chatId, chatId * 100);
+        }
+
+        assertEquals(List.of(
+                new LeaderboardEntry(1, 10, 1000),
+                new LeaderboardEntry(2, 9, 900)), leaderboard.top(2));
+        assertEquals(List.of(
+                new LeaderboardEntry(4, 7, 700),
+                new LeaderboardEntry(5, 6, 600),
+                new LeaderboardEntry(6, 5, 500)), leaderboard.around(6, 1));
+        assertEquals(2, leaderboard.around(10, 1).size());
+        assertTrue(leaderboard.around(42, 1).isEmpty());
+        assertEquals(-1, leaderboard.rankOf(42));
+    }
+
+    private static void assertMatches(Map<Long, Long> totals, Leaderboard leaderboard) {
+        List<Map.Entry<Long, Long>> sorted = new ArrayList<>(totals.entrySet());
+        sorted.sort(Comparator.<Map.Entry<Long, Long>>comparingLong(Map.Entry::getValue).reversed()
+                .thenComparingLong(Map.Entry::getKey));
+
+        assertEquals(sorted.size(), leaderboard.size());
+        List<LeaderboardEntry> top = leaderboard.top(sorted.size());
+        for (int i = 0; i < sorted.size(); i++) {
+            long chatId = sorted.get(i).getKey();
+            assertEquals(new LeaderboardEntry(i + 1, chatId, sorted.get(i).getValue()), top.get(i));
+            assertEquals(i + 1, leaderboard.rankOf(chatId));
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package org.competition.stepbot.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import ch.qos.logback.core.spi.FilterReply;
+import org.junit.jupiter.api.Test;
+import org.slf4j.event.KeyValuePair;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SampledLogFilterTests {
+
+    @Test
+    void limitsOnlyPerUpdateRecords() {
+        Logger logger = new LoggerContext().getLogger("test");
+        logger.setLevel(Level.INFO);
+        SampledLogFilter filter = new SampledLogFilter();
+        filter.setMaxPerSecond(3);
+        filter.start();
+
+        int passed = 0;
+        for (int i = 0; i < 10; i++) {
+            if (filter.decide(UpdateLogContext.PER_UPDATE, logger, Level.INFO, "x", null, null) == FilterReply.NEUTRAL) {
+                passed++;
+            }
+        }
+        assertEquals(3, passed);
+        assertEquals(FilterReply.NEUTRAL, filter.decide(null, logger, Level.INFO, "x", null, null));
+        // Запись выключенного уровня отбрасывается, не расходуя лимит
+        assertEquals(FilterReply.DENY, filter.decide(UpdateLogContext.PER_UPDATE, logger, Level.DEBUG, "x", null, null));
+    }
+
+    @Test
+    void perUpdateRecordsCarryIdsAndAreLimited() {
+        LoggerContext context = new LoggerContext();
+        SampledLogFilter filter = new SampledLogFilter();
+        filter.setMaxPerSecond(2);
+        filter.start();
+        context.addTurboFilter(filter);
+        ListAppender<ILoggingEvent> appender = new ListAppender<>();
+        appender.start();
+        Logger logger = context.getLogger("test");
+        logger.setLevel(Level.INFO);
+        logger.addAppender(appender);
+
+        for (int i = 0; i < 5; i++) {
+            UpdateLogContext.perUpdate(logger, 40 + i, 100).log("Update {} is received", 40 + i);
+        }
+
+        assertEquals(2, appender.list.size());
+        ILoggingEvent event = appender.list.getFirst();
+        assertEquals("Update 40 is received", event.getFormattedMessage());
+        assertTrue(event.getMarkerList().contains(UpdateLogContext.PER_UPDATE));
+        List<KeyValuePair> fields = event.getKeyValuePairs();
+        assertEquals(List.of(UpdateLogContext.UPDATE_ID, UpdateLogContext.CHAT_ID),
+                fields.stream().map(field -> field.key).toList());
+        assertEquals(List.of(40L, 100L), fields.stream().map(field -> field.value).toList());
+    }
+}
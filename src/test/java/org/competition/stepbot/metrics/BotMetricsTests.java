@@ -0,0 +1,30 @@
+package org.competition.stepbot.metrics;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.competition.stepbot.Values;
+import org.competition.stepbot.telegram.exceptions.UserError;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BotMetricsTests {
+
+    @Test
+    void commandOutcomeIsReasonCodeAndTimersAreReused() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        BotMetrics metrics = new BotMetrics(registry);
+
+        for (int i = 0; i < 3; i++) {
+            metrics.timeCommand("/start", Mono.just(1)).block();
+            metrics.timeCommand("/start", Mono.error(new UserError(1, Values.TOO_MANY_COMMANDS)))
+                    .onErrorResume(e -> Mono.empty()).block();
+        }
+
+        assertEquals(3, registry.get("bot.commands").tags("command", "/start", "outcome", "ok").timer().count());
+        Timer failed = registry.get("bot.commands").tags("command", "/start", "outcome", "too_many_commands").timer();
+        assertEquals(3, failed.count());
+        assertEquals(2, registry.get("bot.commands").timers().size());
+    }
+}
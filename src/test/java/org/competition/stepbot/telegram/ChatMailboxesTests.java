@@ -0,0 +1,115 @@
+package org.competition.stepbot.telegram;
+
+import org.competition.stepbot.telegram.exceptions.UserError;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChatMailboxesTests {
+
+    @Test
+    void tasksOfOneChatRunInOrderAndChatsRunInParallel() {
+        ChatMailboxes mailboxes = new ChatMailboxes(16, ChatMailboxes.OverflowPolicy.REJECT_NEW);
+        List<String> log = new CopyOnWriteArrayList<>();
+        Sinks.Empty<Void> gate = Sinks.empty();
+
+        List<Mono<Void>> results = new ArrayList<>();
+        results.add(mailboxes.submit(1, () -> gate.asMono().doOnTerminate(() -> log.add("1a"))));
+        for (int i = 0; i < 5; i++) {
+            String name = "1" + (char) ('b' + i);
+            Duration delay = Duration.ofMillis(10 - 2 * i); // чем позже задача, тем короче: порядок задаёт только очередь
+            results.add(mailboxes.submit(1, () -> Mono.delay(delay).then(Mono.fromRunnable(() -> log.add(name)))));
+        }
+        // Другой чат не ждёт первый
+        mailboxes.submit(2, () -> Mono.fromRunnable(() -> log.add("2"))).block(Duration.ofSeconds(1));
+        assertEquals(List.of("2"), log);
+        assertEquals(1, mailboxes.activeChats());
+
+        gate.tryEmitEmpty();
+        Flux.concat(results).blockLast(Duration.ofSeconds(5));
+        assertEquals(List.of("2", "1a", "1b", "1c", "1d", "1e", "1f"), log);
+    }
+
+    @Test
+    void rejectNewFailsTaskThatDoesNotFit() {
+        ChatMailboxes mailboxes = new ChatMailboxes(1, ChatMailboxes.OverflowPolicy.REJECT_NEW);
+        Sinks.Empty<Void> gate = Sinks.empty();
+        AtomicInteger ran = new AtomicInteger();
+
+        Mono<Void> running = mailboxes.submit(1, gate::asMono);
+        Mono<Void> queued = mailboxes.submit(1, () -> Mono.fromRunnable(ran::incrementAndGet));
+        Mono<Void> rejected = mailboxes.submit(1, () -> Mono.fromRunnable(() -> ran.addAndGet(100)));
+        assertThrows(UserError.class, () -> rejected.block(Duration.ofSeconds(1)));
+
+        gate.tryEmitEmpty();
+        running.block(Duration.ofSeconds(1));
+        queued.block(Duration.ofSeconds(1));
+        assertEquals(1, ran.get());
+    }
+
+    @Test
+    void dropOldestFailsOldestWaitingTask() {
+        ChatMailboxes mailboxes = new ChatMailboxes(1, ChatMailboxes.OverflowPolicy.DROP_OLDEST);
+        Sinks.Empty<Void> gate = Sinks.empty();
+        List<String> log = new CopyOnWriteArrayList<>();
+
+        Mono<Void> running = mailboxes.submit(1, gate::asMono);
+        Mono<Void> oldest = mailboxes.submit(1, () -> Mono.fromRunnable(() -> log.add("oldest")));
+        Mono<Void> newest = mailboxes.submit(1, () -> Mono.fromRunnable(() -> log.add("newest")));
+        assertThrows(UserError.class, () -> oldest.block(Duration.ofSeconds(1)));
+
+        gate.tryEmitEmpty();
+        running.block(Duration.ofSeconds(1));
+        newest.block(Duration.ofSeconds(1));
+        assertEquals(List.of("newest"), log);
+    }
+
+    @Test
+    void mailboxIsRemovedWhenIdleAndFailedTaskDoesNotStopQueue() {
+        ChatMailboxes mailboxes = new ChatMailboxes(16, ChatMailboxes.OverflowPolicy.REJECT_NEW);
+
+        Mono<Void> failing = mailboxes.submit(1, () -> {
+            throw new IllegalStateException("broken command");
+        });
+        Mono<Void> next = mailboxes.submit(1, Mono::empty);
+        assertThrows(IllegalStateException.class, () -> failing.block(Duration.ofSeconds(1)));
+        next.block(Duration.ofSeconds(1));
+        assertEquals(0, mailboxes.activeChats());
+
+        mailboxes.submit(1, () -> Mono.delay(Duration.ofMillis(20)).then()).block(Duration.ofSeconds(1));
+        // Ящик удаляется сразу после того, как задача сообщила о завершении
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (mailboxes.activeChats() != 0) {
+            assertTrue(System.nanoTime() < deadline, "Idle mailbox is not removed");
+            Thread.onSpinWait();
+        }
+    }
+
+    @Test
+    void longBacklogOfSynchronousTasksDoesNotGrowStack() {
+        int backlog = 100_000;
+        ChatMailboxes mailboxes = new ChatMailboxes(backlog, ChatMailboxes.OverflowPolicy.REJECT_NEW);
+        Sinks.Empty<Void> gate = Sinks.empty();
+        AtomicInteger ran = new AtomicInteger();
+
+        mailboxes.submit(1, gate::asMono);
+        Mono<Void> last = Mono.empty();
+        for (int i = 0; i < backlog; i++) {
+            last = mailboxes.submit(1, () -> Mono.fromRunnable(ran::incrementAndGet));
+        }
+
+        gate.tryEmitEmpty(); // вся очередь выполняется в потоке, завершившем первую задачу
+        last.block(Duration.ofSeconds(10));
+        assertEquals(backlog, ran.get());
+        assertEquals(0, mailboxes.activeChats());
+    }
+}
@@ -0,0 +1,133 @@
+package org.competition.stepbot.telegram;
+
+import org.competition.stepbot.telegram.dto.Chat;
+import org.competition.stepbot.telegram.dto.Message;
+import org.competition.stepbot.telegram.dto.MessageEntity;
+import org.competition.stepbot.telegram.dto.Update;
+import org.competition.stepbot.telegram.exceptions.UserError;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InputMessageTests {
+
+    /// Прежняя реализация нормализации на регулярных выражениях: эталон для {@link TextNormalizer}
+    private static String legacyNormalize(String text) {
+        text = text.replaceAll("\\p{C}", "");
+        if (text.isBlank()) {
+            return null;
+        }
+        return text.trim().replaceAll("\\s+", " ");
+    }
+
+    private static final List<String> CORPUS = List.of(
+            "привет",
+            "/start",
+            "/start   hello  world ",
+            "   leading and trailing   ",
+            "tabs\tand\nnew\r\nlines",
+            "zero\u200Bwidth\u200B \u200Bspace",
+            "bidi \u202Emarks\u202C here",
+            "em\u2003space and\u00A0nbsp",
+            "\u2003\u2003",
+            " \t \n ",
+            "\u200B\u200B",
+            "",
+            "эмодзи 👍🏽 и флаг 🇷🇺",
+            "lone \uD83D surrogate \uDC4D here",
+            "private \uE000 use",
+            "unassigned \uFFFF char",
+            "a \u0000 b",
+            " \u200B a",
+            "a \u200B ",
+            "@user1 @user2   текст",
+            "x".repeat(4096),
+            "ab  ".repeat(1024)
+    );
+
+    @Test
+    void normalizerMatchesLegacyOnCorpus() {
+        for (String text : CORPUS) {
+            assertNormalizedLikeLegacy(text);
+        }
+    }
+
+    @Test
+    void normalizerMatchesLegacyOnRandomText() {
+        char[] alphabet = {'a', 'я', ' ', ' ', '\t', '\n', '\u200B', '\u2003', '\u00A0', '\uE000', '\uFFFF',
+                '\uD83D', '\uDC4D', '\u0000', '\u202E', '/', '@'};
+        Random random = new Random(42);
+        for (int iteration = 0; iteration < 20_000; iteration++) {
+            char[] text = new char[random.nextInt(24)];
+            for (int i = 0; i < text.length; i++) {
+                text[i] = alphabet[random.nextInt(alphabet.length)];
+            }
+            assertNormalizedLikeLegacy(new String(text));
+        }
+    }
+
+    @Test
+    void unchangedTextIsNotCopied() {
+        String text = "обычный текст без лишних пробелов";
+        assertSame(text, TextNormalizer.normalize(text, -1).text());
+    }
+
+    @Test
+    void commandIsCutFromNormalizedText() {
+        InputMessage message = InputMessage.of(update("/start   hello  @user",
+                new MessageEntity(0, 6, "bot_command"), new MessageEntity(16, 5, "mention")));
+
+        assertEquals("/start", message.command());
+        assertEquals(" hello @user", message.text());
+        assertEquals(List.of("@user"), message.userMentions());
+    }
+
+    @Test
+    void commandOnlyMessage() {
+        InputMessage message = InputMessage.of(update("  /start  ", new MessageEntity(2, 6, "bot_command")));
+
+        assertTrue(message.isOnlyCommand());
+        assertFalse(message.containsUserMentions());
+    }
+
+    @Test
+    void commandNotAtStartIsRejected() {
+        assertThrows(UserError.class,
+                () -> InputMessage.of(update("hi /start", new MessageEntity(3, 6, "bot_command"))));
+    }
+
+    @Test
+    void twoCommandsAreRejected() {
+        assertThrows(UserError.class, () -> InputMessage.of(update("/start /help",
+                new MessageEntity(0, 6, "bot_command"), new MessageEntity(7, 5, "bot_command"))));
+    }
+
+    @Test
+    void blankMessageIsRejected() {
+        assertThrows(UserError.class, () -> InputMessage.of(update(" \u200B ")));
+    }
+
+    private static void assertNormalizedLikeLegacy(String text) {
+        String expected = legacyNormalize(text);
+        TextNormalizer.Result actual = TextNormalizer.normalize(text, -1);
+        if (expected == null) {
+            assertTrue(actual.blank(), () -> "Expected blank for " + escape(text));
+        } else {
+            assertFalse(actual.blank(), () -> "Unexpected blank for " + escape(text));
+            assertEquals(expected, actual.text(), () -> "Mismatch for " + escape(text));
+        }
+    }
+
+    private static String escape(String text) {
+        StringBuilder sb = new StringBuilder();
+        text.chars().forEach(c -> sb.append(c < 0x20 || c > 0x7E ? String.format("\\u%04X", c) : String.valueOf((char) c)));
+        return sb.toString();
+    }
+
+    private static Update update(String text, MessageEntity... entities) {
+        return new Update(1, new Message(1, text, new Chat(100L), List.of(entities), null));
+    }
+}
@@ -0,0 +1,89 @@
+package org.competition.stepbot.telegram;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.competition.stepbot.metrics.BotMetrics;
+import org.competition.stepbot.telegram.commands.BlockingCommandExecutor;
+import org.competition.stepbot.telegram.commands.CommandRegistry;
+import org.competition.stepbot.telegram.commands.Start;
+import org.competition.stepbot.telegram.dto.Chat;
+import org.competition.stepbot.telegram.dto.Message;
+import org.competition.stepbot.telegram.dto.MessageEntity;
+import org.competition.stepbot.telegram.dto.Update;
+import org.competition.stepbot.telegram.dto.User;
+import org.competition.stepbot.telegram.state.InMemoryStateStore;
+import org.competition.stepbot.telegram.state.SessionExpiry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Mono;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongPollingIngressTests {
+
+    @Test
+    void pollsUpdatesAndRepliesThroughStubServer(@TempDir Path dataDir) throws Exception {
+        AtomicBoolean delivered = new AtomicBoolean();
+        Update update = new Update(41, new Message(7, "/start", new Chat(100L),
+                List.of(new MessageEntity(0, 6, "bot_command")), new User(100L, "Runner")));
+
+        try (StubTelegramServer stub = new StubTelegramServer()) {
+            stub.on("getUpdates", body -> delivered.getAndSet(true)
+                            ? Mono.delay(Duration.ofMillis(200)).thenReturn(List.of())
+                            : Mono.just(List.of(update)))
+                .on("sendMessage", body -> Mono.just(Map.of(
+                            "message_id", 1,
+                            "text", body.path("text").asText(),
+                            "chat", Map.of("id", body.path("chat_id").asLong()))));
+
+            InMemoryStateStore stateStore = new InMemoryStateStore();
+            SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+            BotMetrics metrics = new BotMetrics(meterRegistry);
+            TelegramBot telegramBot = stub.telegramBot(metrics);
+            ChatMailboxes chatMailboxes = new ChatMailboxes(16, ChatMailboxes.OverflowPolicy.REJECT_NEW);
+            UsernameIndex usernames = new UsernameIndex(100, dataDir);
+            MessageHandler messageHandler = new MessageHandler(
+                    new CommandRegistry(List.of(new Start(telegramBot)), ""), stateStore, telegramBot, chatMailboxes,
+                    new SessionExpiry(stateStore, chatMailboxes, telegramBot, Duration.ofMinutes(30), 1000, 512, true),
+                    metrics, new BlockingCommandExecutor(4), usernames);
+            LongPollingIngress ingress = new LongPollingIngress(telegramBot, messageHandler, 100, 1, 4);
+
+            ingress.start();
+            try {
+                assertEquals("deleteWebhook", nextRequest(stub).method());
+                StubTelegramServer.Request firstPoll = nextRequest(stub);
+                assertEquals("getUpdates", firstPoll.method());
+                assertEquals(0, firstPoll.body().path("offset").asLong());
+
+                boolean replied = false;
+                boolean offsetAdvanced = false;
+                while (!(replied && offsetAdvanced)) {
+                    StubTelegramServer.Request request = nextRequest(stub);
+                    if ("sendMessage".equals(request.method())) {
+                        assertEquals(100, request.body().path("chat_id").asLong());
+                        replied = true;
+                    } else if ("getUpdates".equals(request.method())) {
+                        assertEquals(42, request.body().path("offset").asLong());
+                        offsetAdvanced = true;
+                    }
+                }
+                assertEquals(1, meterRegistry.get("bot.commands").tag("command", "/start").timer().count());
+                assertEquals(100L, usernames.resolve("@runner"));
+            } finally {
+                ingress.stop();
+            }
+        }
+    }
+
+    private static StubTelegramServer.Request nextRequest(StubTelegramServer stub) throws InterruptedException {
+        StubTelegramServer.Request request = stub.requests().poll(5, TimeUnit.SECONDS);
+        assertNotNull(request, "Stub server did not receive a request in time");
+        return request;
+    }
+}
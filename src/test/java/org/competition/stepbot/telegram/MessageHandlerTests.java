@@ -0,0 +1,95 @@
+package org.competition.stepbot.telegram;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.competition.stepbot.metrics.BotMetrics;
+import org.competition.stepbot.telegram.commands.BlockingCommand;
+import org.competition.stepbot.telegram.commands.BlockingCommandExecutor;
+import org.competition.stepbot.telegram.commands.CommandRegistry;
+import org.competition.stepbot.telegram.commands.CommandResult;
+import org.competition.stepbot.telegram.dto.Update;
+import org.competition.stepbot.telegram.state.InMemoryStateStore;
+import org.competition.stepbot.telegram.state.SessionExpiry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.competition.stepbot.Values.JSON_MAPPER;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageHandlerTests {
+    @TempDir
+    Path dataDir;
+
+    private StubTelegramServer stub;
+    private BlockingCommandExecutor blockingExecutor;
+    private final AtomicReference<Thread> commandThread = new AtomicReference<>();
+
+    /// Блокирующая команда: если её выполнить в потоке Reactor'а, BlockHound бросит ошибку
+    private record Sleepy(TelegramBot telegramBot, AtomicReference<Thread> thread) implements BlockingCommand {
+        @Override
+        public CommandResult runBlocking(long chatId) throws InterruptedException {
+            Thread.sleep(10);
+            thread.set(Thread.currentThread());
+            return CommandResult.finish(this, telegramBot.sendMessage(chatId, "done"));
+        }
+
+        @Override
+        public String name() {
+            return "/sleepy";
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        stub = new StubTelegramServer().on("sendMessage", body -> Mono.just(Map.of(
+                "message_id", 1,
+                "text", body.path("text").asText(),
+                "chat", Map.of("id", body.path("chat_id").asLong()))));
+        blockingExecutor = new BlockingCommandExecutor(4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        blockingExecutor.close();
+        stub.close();
+    }
+
+    @Test
+    void blockingCommandRunsOnVirtualThread() throws Exception {
+        BotMetrics metrics = new BotMetrics(new SimpleMeterRegistry());
+        TelegramBot telegramBot = stub.telegramBot(metrics);
+        InMemoryStateStore stateStore = new InMemoryStateStore();
+        ChatMailboxes chatMailboxes = new ChatMailboxes(16, ChatMailboxes.OverflowPolicy.REJECT_NEW);
+        MessageHandler messageHandler = new MessageHandler(
+                new CommandRegistry(List.of(new Sleepy(telegramBot, commandThread)), ""),
+                stateStore, telegramBot, chatMailboxes,
+                new SessionExpiry(stateStore, chatMailboxes, telegramBot, Duration.ofMinutes(30), 1000, 512, true),
+                metrics, blockingExecutor, new UsernameIndex(100, dataDir));
+
+        // Подписка из неблокирующего потока, как при обработке webhook'а в Netty
+        messageHandler.handleUpdate(update(100, "/sleepy"))
+                .subscribeOn(Schedulers.parallel())
+                .block(Duration.ofSeconds(5));
+
+        assertTrue(commandThread.get().isVirtual(), "Blocking command must run on a virtual thread");
+        StubTelegramServer.Request reply = stub.requests().poll(5, TimeUnit.SECONDS);
+        assertNotNull(reply, "Command reply was not sent");
+        assertEquals("done", reply.body().path("text").asText());
+    }
+
+    private static Update update(long chatId, String command) throws Exception {
+        return JSON_MAPPER.readValue("{\"update_id\":1,\"message\":{\"message_id\":7,\"text\":\"" + command + "\","
+                + "\"chat\":{\"id\":" + chatId + "},\"entities\":[{\"offset\":0,\"length\":" + command.length()
+                + ",\"type\":\"bot_command\"}]}}", Update.class);
+    }
+}
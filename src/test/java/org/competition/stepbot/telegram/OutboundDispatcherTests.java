@@ -0,0 +1,106 @@
+package org.competition.stepbot.telegram;
+
+import org.competition.stepbot.telegram.exceptions.TelegramApiException;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OutboundDispatcherTests {
+
+    @Test
+    void tooManyRequestsIsRetriedAfterRetryAfter() {
+        OutboundDispatcher dispatcher = new OutboundDispatcher(1000, 100, 1000, 100, 10, 10, 3);
+        AtomicInteger attempts = new AtomicInteger();
+
+        long start = System.nanoTime();
+        String result = dispatcher.submit(1, () -> attempts.incrementAndGet() == 1
+                        ? Mono.error(new TelegramApiException(429, "Too Many Requests", Duration.ofMillis(200), null))
+                        : Mono.just("sent"))
+                .block(Duration.ofSeconds(5));
+
+        assertEquals("sent", result);
+        assertEquals(2, attempts.get());
+        assertTrue(System.nanoTime() - start >= Duration.ofMillis(200).toNanos(), "Retry must wait for retry_after");
+        assertEquals(0, dispatcher.pendingCount());
+    }
+
+    @Test
+    void retriesAreLimitedAndOtherErrorsAreNotRetried() {
+        OutboundDispatcher dispatcher = new OutboundDispatcher(1000, 100, 1000, 100, 10, 10, 2);
+        AtomicInteger attempts = new AtomicInteger();
+        Mono<Object> tooMany = dispatcher.submit(1, () -> {
+            attempts.incrementAndGet();
+            return Mono.error(new TelegramApiException(429, "Too Many Requests", Duration.ofMillis(1), null));
+        });
+
+        TelegramApiException error = assertThrows(TelegramApiException.class,
+                () -> tooMany.block(Duration.ofSeconds(5)));
+        assertTrue(error.isTooManyRequests());
+        assertEquals(3, attempts.get()); // первая попытка и 2 повтора
+
+        attempts.set(0);
+        Mono<Object> badRequest = dispatcher.submit(2, () -> {
+            attempts.incrementAndGet();
+            return Mono.error(new TelegramApiException(400, "Bad Request: chat not found"));
+        });
+        assertThrows(TelegramApiException.class, () -> badRequest.block(Duration.ofSeconds(5)));
+        assertEquals(1, attempts.get());
+        assertEquals(0, dispatcher.pendingCount());
+    }
+
+    @Test
+    void waitingRequestsGetFreedSlotsInOrderAndOverflowIsRejected() {
+        OutboundDispatcher dispatcher = new OutboundDispatcher(1000, 100, 1000, 100, 1, 2, 3);
+        Sinks.One<String> first = Sinks.one();
+        List<String> started = new CopyOnWriteArrayList<>();
+
+        dispatcher.submit(1, () -> call(started, "first", first.asMono())).subscribe();
+        dispatcher.submit(2, () -> call(started, "second", Mono.just("second"))).subscribe();
+        dispatcher.submit(3, () -> call(started, "third", Mono.just("third"))).subscribe();
+        assertEquals(List.of("first"), started);
+        assertEquals(1, dispatcher.pendingCount());
+        assertEquals(2, dispatcher.waitingCount());
+
+        Mono<String> overflow = dispatcher.submit(4, () -> Mono.just("fourth"));
+        assertThrows(RejectedExecutionException.class, () -> overflow.block(Duration.ofSeconds(1)));
+
+        first.tryEmitValue("first");
+        assertEquals(List.of("first", "second", "third"), started);
+        assertEquals(0, dispatcher.pendingCount());
+        assertEquals(0, dispatcher.waitingCount());
+    }
+
+    @Test
+    void cancelledWaiterDoesNotKeepSlot() {
+        OutboundDispatcher dispatcher = new OutboundDispatcher(1000, 100, 1000, 100, 1, 2, 3);
+        Sinks.One<String> first = Sinks.one();
+        List<String> started = new CopyOnWriteArrayList<>();
+
+        dispatcher.submit(1, () -> call(started, "first", first.asMono())).subscribe();
+        Disposable cancelled = dispatcher.submit(2, () -> call(started, "cancelled", Mono.just("cancelled")))
+                .subscribe();
+        dispatcher.submit(3, () -> call(started, "third", Mono.just("third"))).subscribe();
+        cancelled.dispose();
+        assertEquals(1, dispatcher.waitingCount());
+
+        first.tryEmitValue("first");
+        assertEquals(List.of("first", "third"), started);
+        assertEquals(0, dispatcher.pendingCount());
+        assertEquals("again", dispatcher.submit(4, () -> Mono.just("again")).block(Duration.ofSeconds(1)));
+    }
+
+    /// Запрос, который запоминает, когда он начал выполняться
+    private static Mono<String> call(List<String> started, String name, Mono<String> result) {
+        started.add(name);
+        return result;
+    }
+}
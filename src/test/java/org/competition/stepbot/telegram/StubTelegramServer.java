@@ -0,0 +1,101 @@
+package org.competition.stepbot.telegram;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.competition.stepbot.metrics.BotMetrics;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Function;
+
+import static org.competition.stepbot.Values.JSON_MAPPER;
+
+/**
+ * <p>Локальная заглушка Bot API для тестов. Отвечает на <code>POST /bot{token}/{method}</code> тем, что вернёт
+ * обработчик метода (обёрнутым в <code>{"ok": true, "result": ...}</code>), и запоминает все запросы. Если
+ * обработчик вернул {@link Response}, то он отправляется как есть (так задаются ошибки).</p>
+ */
+public class StubTelegramServer implements AutoCloseable {
+    public record Request(String method, JsonNode body) {
+    }
+
+    /// Ответ заглушки как есть, без обёртки
+    public record Response(int status, String contentType, String body) {
+    }
+
+
+    private final Map<String, Function<JsonNode, Mono<Object>>> handlers = new ConcurrentHashMap<>();
+    private final BlockingQueue<Request> requests = new LinkedBlockingQueue<>();
+    private final DisposableServer server;
+
+    public StubTelegramServer() {
+        server = HttpServer.create()
+                .host("127.0.0.1")
+                .port(0)
+                .route(routes -> routes.post("/bot{token}/{method}", (request, response) -> request.receive()
+                        .aggregate().asString().defaultIfEmpty("{}")
+                        .flatMap(body -> {
+                            String method = request.param("method");
+                            JsonNode json = readTree(body);
+                            requests.add(new Request(method, json));
+                            return handlers.getOrDefault(method, ignored -> Mono.just(true)).apply(json);
+                        })
+                        .map(result -> {
+                            if (result instanceof Response raw) {
+                                return raw;
+                            }
+                            ObjectNode envelope = JSON_MAPPER.createObjectNode().put("ok", true);
+                            envelope.set("result", JSON_MAPPER.valueToTree(result));
+                            return new Response(200, "application/json", envelope.toString());
+                        })
+                        .flatMap(raw -> response.status(raw.status()).header("Content-Type", raw.contentType())
+                                .sendString(Mono.just(raw.body())).then())))
+                .bindNow();
+    }
+
+    /// Ошибка Bot API: <code>{"ok": false, ...}</code> с кодом ошибки в HTTP-статусе
+    public static Response error(int errorCode, String description) {
+        ObjectNode envelope = JSON_MAPPER.createObjectNode()
+                .put("ok", false)
+                .put("error_code", errorCode)
+                .put("description", description);
+        return new Response(errorCode, "application/json", envelope.toString());
+    }
+
+    /// Задаёт ответ на вызов метода Bot API
+    public StubTelegramServer on(String method, Function<JsonNode, Mono<Object>> handler) {
+        handlers.put(method, handler);
+        return this;
+    }
+
+    public String url() {
+        return "http://127.0.0.1:" + server.port();
+    }
+
+    /// Бот, который обращается к этой заглушке (отправка через {@link TestOutboundDispatcher})
+    public TelegramBot telegramBot(BotMetrics metrics) {
+        return new TelegramBot(TestOutboundDispatcher.create(), metrics, url(), "test-token");
+    }
+
+    public BlockingQueue<Request> requests() {
+        return requests;
+    }
+
+    private static JsonNode readTree(String body) {
+        try {
+            return JSON_MAPPER.readTree(body);
+        } catch (Exception e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.disposeNow();
+    }
+}
@@ -0,0 +1,132 @@
+package org.competition.stepbot.telegram;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.competition.stepbot.metrics.BotMetrics;
+import org.competition.stepbot.telegram.exceptions.TelegramApiException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TelegramBotTests {
+    private static final String JSON = "application/json";
+
+    private StubTelegramServer stub;
+    private TelegramBot telegramBot;
+
+    @BeforeEach
+    void setUp() {
+        stub = new StubTelegramServer();
+        telegramBot = stub.telegramBot(new BotMetrics(new SimpleMeterRegistry()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        stub.close();
+    }
+
+    @Test
+    void resultIsDecoded() {
+        stub.on("getUpdates", body -> Mono.just(List.of(Map.of("update_id", 5,
+                "message", Map.of("message_id", 7, "text", "/start", "chat", Map.of("id", 100))))));
+
+        assertEquals(true, telegramBot.deleteWebhook().block(Duration.ofSeconds(5)));
+        var updates = telegramBot.getUpdates(0, 10, 0).block(Duration.ofSeconds(5));
+        assertNotNull(updates);
+        assertEquals(1, updates.size());
+        assertEquals(5, updates.getFirst().updateId());
+        assertEquals("/start", updates.getFirst().message().text());
+    }
+
+    @Test
+    void okFalseBecomesApiException() {
+        stub.on("deleteWebhook", body -> Mono.just(StubTelegramServer.error(401, "Unauthorized")))
+                // Код ошибки из тела важнее HTTP-статуса
+                .on("getUpdates", body -> Mono.just(new StubTelegramServer.Response(200, JSON,
+                        "{\"ok\":false,\"error_code\":409,\"description\":\"Conflict: webhook is active\"}")));
+
+        TelegramApiException unauthorized = assertThrows(TelegramApiException.class,
+                () -> telegramBot.deleteWebhook().block(Duration.ofSeconds(5)));
+        assertEquals(401, unauthorized.getErrorCode());
+        assertEquals("Unauthorized", unauthorized.getDescription());
+        assertNull(unauthorized.getRetryAfter());
+        assertFalse(unauthorized.isTooManyRequests());
+        assertFalse(unauthorized.isChatMigrated());
+
+        TelegramApiException conflict = assertThrows(TelegramApiException.class,
+                () -> telegramBot.getUpdates(0, 10, 0).block(Duration.ofSeconds(5)));
+        assertEquals(409, conflict.getErrorCode());
+        assertEquals("Conflict: webhook is active", conflict.getDescription());
+    }
+
+    @Test
+    void retryAfterAndMigrateToChatIdAreDecoded() {
+        stub.on("deleteWebhook", body -> Mono.just(new StubTelegramServer.Response(429, JSON,
+                        "{\"ok\":false,\"error_code\":429,\"description\":\"Too Many Requests: retry after 7\","
+                                + "\"parameters\":{\"retry_after\":7}}")))
+                .on("getUpdates", body -> Mono.just(new StubTelegramServer.Response(400, JSON,
+                        "{\"ok\":false,\"error_code\":400,\"description\":\"Bad Request: group chat was upgraded\","
+                                + "\"parameters\":{\"migrate_to_chat_id\":-1001234567890}}")));
+
+        TelegramApiException tooMany = assertThrows(TelegramApiException.class,
+                () -> telegramBot.deleteWebhook().block(Duration.ofSeconds(5)));
+        assertTrue(tooMany.isTooManyRequests());
+        assertEquals(Duration.ofSeconds(7), tooMany.getRetryAfter());
+        assertNull(tooMany.getMigrateToChatId());
+
+        TelegramApiException migrated = assertThrows(TelegramApiException.class,
+                () -> telegramBot.getUpdates(0, 10, 0).block(Duration.ofSeconds(5)));
+        assertTrue(migrated.isChatMigrated());
+        assertEquals(-1001234567890L, migrated.getMigrateToChatId());
+        assertFalse(migrated.isTooManyRequests());
+    }
+
+    @Test
+    void tooManyRequestsIsRetriedByDispatcher() {
+        AtomicInteger attempts = new AtomicInteger();
+        stub.on("sendMessage", body -> Mono.just(attempts.incrementAndGet() == 1
+                ? new StubTelegramServer.Response(429, JSON, "{\"ok\":false,\"error_code\":429,"
+                        + "\"description\":\"Too Many Requests: retry after 1\",\"parameters\":{\"retry_after\":1}}")
+                : Map.of("message_id", 3, "text", "hi", "chat", Map.of("id", 100))));
+
+        MessageInfo sent = telegramBot.sendMessage(100, "hi").block(Duration.ofSeconds(5));
+
+        assertNotNull(sent);
+        assertEquals(3, sent.messageId());
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    void nonJsonErrorBodyBecomesDescription() {
+        stub.on("deleteWebhook", body -> Mono.just(new StubTelegramServer.Response(502, "text/html",
+                "<html>502 Bad Gateway</html>")))
+                .on("getUpdates", body -> Mono.just(new StubTelegramServer.Response(503, "text/plain", "")));
+
+        TelegramApiException badGateway = assertThrows(TelegramApiException.class,
+                () -> telegramBot.deleteWebhook().block(Duration.ofSeconds(5)));
+        assertEquals(502, badGateway.getErrorCode());
+        assertEquals("<html>502 Bad Gateway</html>", badGateway.getDescription());
+
+        TelegramApiException unavailable = assertThrows(TelegramApiException.class,
+                () -> telegramBot.getUpdates(0, 10, 0).block(Duration.ofSeconds(5)));
+        assertEquals(503, unavailable.getErrorCode());
+        assertEquals("", unavailable.getDescription());
+    }
+
+    @Test
+    void malformedJsonIsReportedAsParseFailure() {
+        stub.on("deleteWebhook", body -> Mono.just(new StubTelegramServer.Response(200, JSON, "{\"ok\":tru")));
+
+        RuntimeException error = assertThrows(RuntimeException.class,
+                () -> telegramBot.deleteWebhook().block(Duration.ofSeconds(5)));
+        assertFalse(error instanceof TelegramApiException);
+        assertEquals("Failed to parse response", error.getMessage());
+    }
+}
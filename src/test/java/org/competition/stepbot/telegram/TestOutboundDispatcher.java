@@ -0,0 +1,23 @@
+package org.competition.stepbot.telegram;
+
+/**
+ * <p>{@link OutboundDispatcher} для тестов и бенчмарков, которые проверяют не саму отправку: ограничения частоты
+ * как в <code>application.properties</code>, а очереди поменьше.</p>
+ */
+public final class TestOutboundDispatcher {
+    public static final double GLOBAL_RATE = 30;
+    public static final int GLOBAL_BURST = 10;
+    public static final double CHAT_RATE = 1;
+    public static final int CHAT_BURST = 3;
+    public static final int QUEUE_CAPACITY = 100;
+    public static final int MAX_WAITING = 1000;
+    public static final int MAX_RETRIES = 3;
+
+    private TestOutboundDispatcher() {
+    }
+
+    public static OutboundDispatcher create() {
+        return new OutboundDispatcher(GLOBAL_RATE, GLOBAL_BURST, CHAT_RATE, CHAT_BURST, QUEUE_CAPACITY, MAX_WAITING,
+                MAX_RETRIES);
+    }
+}
@@ -0,0 +1,56 @@
+package org.competition.stepbot.telegram;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketTests {
+    private static final long INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+
+    @Test
+    void burstIsFreeThenRequestsAreSpacedByInterval() {
+        TokenBucket bucket = new TokenBucket(10, 3);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, bucket.reserve(), "Request " + i + " is within the burst");
+        }
+        // Каждый следующий токен — на интервал позже предыдущего (за время теста часть интервала уже прошла)
+        long fourth = bucket.reserve();
+        long fifth = bucket.reserve();
+        assertTrue(fourth > INTERVAL / 2 && fourth <= INTERVAL, "fourth = " + fourth);
+        assertTrue(fifth - fourth > INTERVAL * 9 / 10 && fifth - fourth <= INTERVAL * 11 / 10, "fifth = " + fifth);
+        assertFalse(bucket.isIdle(System.nanoTime()));
+    }
+
+    @Test
+    void bucketRefillsOverTime() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(100, 2);
+        bucket.reserve();
+        bucket.reserve();
+        assertTrue(bucket.reserve() > 0);
+
+        Thread.sleep(50); // больше, чем нужно на восстановление всей корзины (3 × 10 мс)
+        assertTrue(bucket.isIdle(System.nanoTime()));
+        assertEquals(0, bucket.reserve());
+        assertEquals(0, bucket.reserve());
+    }
+
+    @Test
+    void pauseDelaysNextToken() {
+        TokenBucket bucket = new TokenBucket(10, 3);
+        bucket.pause(Duration.ofSeconds(1));
+
+        long wait = bucket.reserve();
+        assertTrue(wait > TimeUnit.MILLISECONDS.toNanos(900) && wait <= TimeUnit.SECONDS.toNanos(1), "wait = " + wait);
+        assertFalse(bucket.isIdle(System.nanoTime()));
+    }
+
+    @Test
+    void invalidRateIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(1, 0));
+    }
+}
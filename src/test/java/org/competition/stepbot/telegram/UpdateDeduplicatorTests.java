@@ -0,0 +1,74 @@
+package org.competition.stepbot.telegram;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UpdateDeduplicatorTests {
+
+    @Test
+    void duplicatesAreDropped() {
+        UpdateDeduplicator deduplicator = new UpdateDeduplicator(16);
+
+        assertTrue(deduplicator.markSeen(1));
+        assertTrue(deduplicator.markSeen(3)); // обновления могут приходить не по порядку
+        assertTrue(deduplicator.markSeen(2));
+        assertFalse(deduplicator.markSeen(1));
+        assertFalse(deduplicator.markSeen(3));
+        assertEquals(2, deduplicator.droppedCount());
+    }
+
+    @Test
+    void idsOlderThanWindowAreDropped() {
+        UpdateDeduplicator deduplicator = new UpdateDeduplicator(4);
+
+        assertTrue(deduplicator.markSeen(10));
+        assertTrue(deduplicator.markSeen(14)); // та же ячейка, 10 вышло из окна
+        assertFalse(deduplicator.markSeen(10), "Redelivery of an update outside the window is dropped");
+        assertFalse(deduplicator.markSeen(6), "Update older than the window is treated as redelivery");
+        assertTrue(deduplicator.markSeen(11));
+        assertTrue(deduplicator.markSeen(18));
+        assertEquals(2, deduplicator.droppedCount());
+    }
+
+    @Test
+    void concurrentMarkSeenOfSameIdAcceptsItOnce() throws Exception {
+        int threads = 8;
+        int rounds = 2000;
+        UpdateDeduplicator deduplicator = new UpdateDeduplicator(64);
+        AtomicIntegerArray accepted = new AtomicIntegerArray(rounds);
+        CyclicBarrier barrier = new CyclicBarrier(threads);
+
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    for (int round = 0; round < rounds; round++) {
+                        barrier.await();
+                        // Все потоки одновременно отмечают один и тот же id; все раунды попадают в одну ячейку
+                        if (deduplicator.markSeen(round * 64L)) {
+                            accepted.incrementAndGet(round);
+                        }
+                    }
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        for (int round = 0; round < rounds; round++) {
+            assertEquals(1, accepted.get(round), "Update of round " + round + " must be accepted exactly once");
+        }
+        assertEquals((long) (threads - 1) * rounds, deduplicator.droppedCount());
+    }
+}
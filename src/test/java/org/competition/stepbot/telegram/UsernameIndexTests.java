@@ -0,0 +1,62 @@
+package org.competition.stepbot.telegram;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UsernameIndexTests {
+
+    @Test
+    void resolvesMentionsIgnoringCaseAndAt(@TempDir Path dataDir) {
+        UsernameIndex index = new UsernameIndex(100, dataDir);
+        index.record("Runner", 1);
+        index.record("walker", 2);
+
+        assertEquals(Map.of("@RUNNER", 1L, "walker", 2L), index.resolve(List.of("@RUNNER", "walker", "@unknown")));
+        assertNull(index.resolve("@unknown"));
+    }
+
+    @Test
+    void findsUsernameByChatId(@TempDir Path dataDir) {
+        UsernameIndex index = new UsernameIndex(100, dataDir);
+        index.record("Runner", 1);
+        index.record("walker", 2);
+        index.record("walker", 3); // username перешёл к другому пользователю
+
+        assertEquals("runner", index.username(1));
+        assertNull(index.username(2));
+        assertEquals("walker", index.username(3));
+        assertNull(index.username(42));
+        index.close();
+
+        assertEquals("walker", new UsernameIndex(100, dataDir).username(3));
+    }
+
+    @Test
+    void evictsLeastRecentlySeenUsers(@TempDir Path dataDir) {
+        UsernameIndex index = new UsernameIndex(8, dataDir);
+        for (int i = 0; i < 20; i++) {
+            index.record("user" + i, i);
+        }
+
+        assertTrue(index.size() <= 9, "size " + index.size());
+        assertNull(index.resolve("user0"));
+        assertNull(index.username(0));
+        assertEquals(19L, index.resolve("user19"));
+        assertEquals("user19", index.username(19));
+    }
+
+    @Test
+    void survivesRestartThroughSnapshot(@TempDir Path dataDir) {
+        UsernameIndex index = new UsernameIndex(100, dataDir);
+        index.record("runner", 1);
+        index.close();
+
+        assertEquals(1L, new UsernameIndex(100, dataDir).resolve("@Runner"));
+    }
+}
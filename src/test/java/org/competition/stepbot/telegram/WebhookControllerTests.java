@@ -0,0 +1,240 @@
+package org.competition.stepbot.telegram;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.competition.stepbot.metrics.BotMetrics;
+import org.competition.stepbot.telegram.commands.BlockingCommandExecutor;
+import org.competition.stepbot.telegram.commands.Command;
+import org.competition.stepbot.telegram.commands.CommandRegistry;
+import org.competition.stepbot.telegram.commands.CommandResult;
+import org.competition.stepbot.telegram.commands.Start;
+import org.competition.stepbot.telegram.state.InMemoryStateStore;
+import org.competition.stepbot.telegram.state.SessionExpiry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.competition.stepbot.Values.JSON_MAPPER;
+import static org.junit.jupiter.api.Assertions.*;
+
+class WebhookControllerTests {
+    @TempDir
+    Path dataDir;
+
+    private StubTelegramServer stub;
+    private MessageHandler messageHandler;
+    /// Пока не завершён, команда /gate не завершается
+    private final Sinks.Empty<Void> gate = Sinks.empty();
+
+    /// Команда, которая отвечает двумя сообщениями
+    private record TwoReplies(TelegramBot telegramBot) implements Command {
+        @Override
+        public Mono<CommandResult> run(long chatId) {
+            return Mono.just(CommandResult.finish(this,
+                    telegramBot.sendMessage(chatId, "first"), telegramBot.sendMessage(chatId, "second")));
+        }
+
+        @Override
+        public String name() {
+            return "/two";
+        }
+    }
+
+    /// Команда, которая отвечает одним сообщением не сразу, а через delay
+    private record Delayed(TelegramBot telegramBot, Duration delay) implements Command {
+        @Override
+        public Mono<CommandResult> run(long chatId) {
+            return Mono.delay(delay).thenReturn(CommandResult.finish(this, telegramBot.sendMessage(chatId, "late")));
+        }
+
+        @Override
+        public String name() {
+            return "/late";
+        }
+    }
+
+    /// Команда, которая завершается, только когда тест завершит gate
+    private record Gate(Mono<Void> gate) implements Command {
+        @Override
+        public Mono<CommandResult> run(long chatId) {
+            return gate.thenReturn(CommandResult.finish(this));
+        }
+
+        @Override
+        public String name() {
+            return "/gate";
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        stub = new StubTelegramServer().on("sendMessage", body -> Mono.just(Map.of(
+                "message_id", 1,
+                "text", body.path("text").asText(),
+                "chat", Map.of("id", body.path("chat_id").asLong()))));
+        BotMetrics metrics = new BotMetrics(new SimpleMeterRegistry());
+        TelegramBot telegramBot = stub.telegramBot(metrics);
+        InMemoryStateStore stateStore = new InMemoryStateStore();
+        ChatMailboxes chatMailboxes = new ChatMailboxes(16, ChatMailboxes.OverflowPolicy.REJECT_NEW);
+        messageHandler = new MessageHandler(
+                new CommandRegistry(List.of(new Start(telegramBot), new TwoReplies(telegramBot),
+                        new Delayed(telegramBot, Duration.ofMillis(100)), new Gate(gate.asMono())), ""),
+                stateStore, telegramBot, chatMailboxes,
+                new SessionExpiry(stateStore, chatMailboxes, telegramBot, Duration.ofMinutes(30), 1000, 512, true),
+                metrics, new BlockingCommandExecutor(4), new UsernameIndex(100, dataDir));
+    }
+
+    @AfterEach
+    void tearDown() {
+        gate.tryEmitEmpty();
+        stub.close();
+    }
+
+    @Test
+    void replyIsSentByRequestByDefault() throws Exception {
+        ResponseEntity<Map<String, Object>> response = controller(WebhookController.AckMode.AFTER_HANDLING, 16, false, 0)
+                .onUpdateReceived(null, update(1, 100, "/start")).block();
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNull(response.getBody());
+        assertEquals("sendMessage", nextRequest().method());
+    }
+
+    @Test
+    void singleReplyIsReturnedInWebhookResponse() throws Exception {
+        ResponseEntity<Map<String, Object>> response = controller(WebhookController.AckMode.AFTER_HANDLING, 16, true, 0)
+                .onUpdateReceived(null, update(1, 100, "/start")).block();
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("sendMessage", response.getBody().get("method"));
+        assertEquals(100L, response.getBody().get("chat_id"));
+        assertNull(stub.requests().poll(200, TimeUnit.MILLISECONDS), "Reply must not be sent by a separate request");
+    }
+
+    @Test
+    void severalRepliesAreSentByRequests() throws Exception {
+        ResponseEntity<Map<String, Object>> response = controller(WebhookController.AckMode.AFTER_HANDLING, 16, true, 0)
+                .onUpdateReceived(null, update(2, 100, "/two")).block();
+
+        assertNull(response.getBody());
+        Set<String> sent = new HashSet<>();
+        for (int i = 0; i < 2; i++) {
+            sent.add(nextRequest().body().path("text").asText());
+        }
+        assertEquals(Set.of("first", "second"), sent);
+    }
+
+    @Test
+    void immediateAckDoesNotWaitForHandling() {
+        ResponseEntity<Map<String, Object>> response = controller(WebhookController.AckMode.IMMEDIATE, 16, true, 0)
+                .onUpdateReceived(null, update(3, 100, "/gate")).block(Duration.ofSeconds(1));
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(1, gate.currentSubscriberCount(), "Handling must still wait for the gate");
+    }
+
+    @Test
+    void replyWaitReturnsLateReplyInBody() throws Exception {
+        ResponseEntity<Map<String, Object>> response = controller(WebhookController.AckMode.IMMEDIATE, 16, true, 5000)
+                .onUpdateReceived(null, update(4, 100, "/late")).block(Duration.ofSeconds(5));
+
+        assertEquals("late", response.getBody().get("text"));
+        assertNull(stub.requests().poll(200, TimeUnit.MILLISECONDS), "Reply must not be sent by a separate request");
+    }
+
+    @Test
+    void updateRejectedWhenQueueIsFullIsHandledOnRedelivery() throws Exception {
+        WebhookController controller = controller(WebhookController.AckMode.IMMEDIATE, 1, false, 0);
+        assertEquals(HttpStatus.OK, controller.onUpdateReceived(null, update(5, 200, "/gate")).block().getStatusCode());
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE,
+                controller.onUpdateReceived(null, update(6, 100, "/start")).block().getStatusCode());
+
+        gate.tryEmitEmpty();
+        ResponseEntity<Map<String, Object>> redelivered = null;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) { // место освобождается, когда /gate дообработается
+            redelivered = controller.onUpdateReceived(null, update(6, 100, "/start")).block();
+            if (redelivered.getStatusCode() == HttpStatus.OK) {
+                break;
+            }
+            Thread.sleep(10);
+        }
+        assertEquals(HttpStatus.OK, redelivered.getStatusCode());
+        StubTelegramServer.Request request = nextRequest();
+        assertEquals("sendMessage", request.method());
+        assertEquals(100, request.body().path("chat_id").asLong());
+    }
+
+    @Test
+    void stopWaitsForAcknowledgedUpdatesAndRejectsNewOnes() throws Exception {
+        WebhookController controller = controller(WebhookController.AckMode.IMMEDIATE, 16, false, 0, 5000);
+        controller.start();
+        assertEquals(HttpStatus.OK, controller.onUpdateReceived(null, update(7, 100, "/gate")).block().getStatusCode());
+        assertEquals(1, controller.queuedCount());
+
+        Thread stopping = new Thread(controller::stop);
+        stopping.start();
+        stopping.join(200);
+        assertTrue(stopping.isAlive(), "Stop must wait for the acknowledged update");
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE,
+                controller.onUpdateReceived(null, update(8, 100, "/start")).block().getStatusCode());
+
+        gate.tryEmitEmpty();
+        stopping.join(5000);
+        assertFalse(stopping.isAlive(), "Stop must return once the update is handled");
+        assertEquals(0, controller.queuedCount());
+        assertFalse(controller.isRunning());
+    }
+
+    @Test
+    void stopGivesUpAfterDrainTimeout() throws Exception {
+        WebhookController controller = controller(WebhookController.AckMode.IMMEDIATE, 16, false, 0, 100);
+        controller.start();
+        controller.onUpdateReceived(null, update(9, 100, "/gate")).block();
+
+        long start = System.nanoTime();
+        controller.stop();
+        long elapsed = System.nanoTime() - start;
+
+        assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(100) && elapsed < TimeUnit.SECONDS.toNanos(2),
+                "elapsed = " + elapsed);
+        assertEquals(1, controller.queuedCount());
+    }
+
+    private WebhookController controller(WebhookController.AckMode ackMode, int queueCapacity, boolean replyInBody,
+                                         long replyWaitMs) {
+        return controller(ackMode, queueCapacity, replyInBody, replyWaitMs, 5000);
+    }
+
+    private WebhookController controller(WebhookController.AckMode ackMode, int queueCapacity, boolean replyInBody,
+                                         long replyWaitMs, long drainTimeoutMs) {
+        return new WebhookController(messageHandler, new UpdateDeduplicator(64), new BotMetrics(new SimpleMeterRegistry()),
+                JSON_MAPPER, "", ackMode, queueCapacity, replyInBody, replyWaitMs, drainTimeoutMs);
+    }
+
+    private StubTelegramServer.Request nextRequest() throws InterruptedException {
+        StubTelegramServer.Request request = stub.requests().poll(5, TimeUnit.SECONDS);
+        assertNotNull(request, "Stub server did not receive a request in time");
+        return request;
+    }
+
+    private static byte[] update(long updateId, long chatId, String command) {
+        return ("{\"update_id\":" + updateId + ",\"message\":{\"message_id\":7,\"text\":\"" + command + "\","
+                + "\"chat\":{\"id\":" + chatId + "},\"entities\":[{\"offset\":0,\"length\":" + command.length()
+                + ",\"type\":\"bot_command\"}]}}").getBytes(StandardCharsets.UTF_8);
+    }
+}
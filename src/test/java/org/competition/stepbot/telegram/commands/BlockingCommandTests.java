@@ -0,0 +1,71 @@
+package org.competition.stepbot.telegram.commands;
+
+import org.junit.jupiter.api.Test;
+import reactor.blockhound.BlockingOperationError;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BlockingCommandTests {
+
+    /**
+     * <p>BlockHound устанавливается для всех тестов (blockhound-junit-platform) и бросает
+     * {@link BlockingOperationError}, если поток Netty или Reactor (кроме boundedElastic) блокируется.</p>
+     */
+    @Test
+    void blockingOnEventLoopIsDetected() {
+        Mono<Integer> blocking = Mono.fromCallable(() -> {
+            Thread.sleep(10);
+            return 1;
+        }).subscribeOn(Schedulers.parallel());
+
+        Throwable error = assertThrows(RuntimeException.class, blocking::block);
+        assertInstanceOf(BlockingOperationError.class, error.getCause() != null ? error.getCause() : error);
+    }
+
+    @Test
+    void blockingCommandRunsOnVirtualThreadFromEventLoop() {
+        BlockingCommandExecutor executor = new BlockingCommandExecutor(4);
+        try {
+            // Подписка из неблокирующего потока, как при обработке webhook'а в Netty
+            Thread thread = Mono.defer(() -> executor.execute(() -> {
+                        Thread.sleep(10);
+                        return Thread.currentThread();
+                    }))
+                    .subscribeOn(Schedulers.parallel())
+                    .block(Duration.ofSeconds(5));
+
+            assertNotNull(thread);
+            assertTrue(thread.isVirtual());
+        } finally {
+            executor.close();
+        }
+    }
+
+    @Test
+    void concurrencyIsCapped() {
+        BlockingCommandExecutor executor = new BlockingCommandExecutor(2);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        try {
+            Flux.range(0, 8)
+                    .flatMap(i -> executor.execute(() -> {
+                        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                        Thread.sleep(20);
+                        running.decrementAndGet();
+                        return i;
+                    }))
+                    .blockLast(Duration.ofSeconds(5));
+
+            assertEquals(2, maxRunning.get());
+            assertEquals(0, executor.activeTasks());
+        } finally {
+            executor.close();
+        }
+    }
+}
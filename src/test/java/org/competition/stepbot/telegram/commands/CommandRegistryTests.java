@@ -0,0 +1,100 @@
+package org.competition.stepbot.telegram.commands;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommandRegistryTests {
+
+    private static Command command(String name, String... aliases) {
+        return new Command() {
+            @Override
+            public Mono<CommandResult> run(long chatId) {
+                return Mono.empty();
+            }
+
+            @Override
+            public String name() {
+                return name;
+            }
+
+            @Override
+            public Set<String> aliases() {
+                return Set.of(aliases);
+            }
+        };
+    }
+
+    private final Command start = command("/start", "/begin");
+    private final Command steps = command("/Steps");
+
+    @Test
+    void commandsAreFoundByNameAndAliasIgnoringCase() {
+        CommandRegistry registry = new CommandRegistry(List.of(start, steps), "");
+
+        assertSame(start, registry.find("/start"));
+        assertSame(start, registry.find("/START"));
+        assertSame(start, registry.find("/begin"));
+        assertSame(steps, registry.find("/steps"));
+        assertSame(steps, registry.find("/sTePs"));
+        assertNull(registry.find("/stop"));
+        assertNull(registry.find("/star"));
+        assertNull(registry.find("/started"));
+        assertNull(registry.find(""));
+    }
+
+    @Test
+    void botNameSuffixIsCheckedWhenUsernameIsSet() {
+        CommandRegistry registry = new CommandRegistry(List.of(start, steps), "@StepBot");
+
+        assertSame(start, registry.find("/start@StepBot"));
+        assertSame(start, registry.find("/begin@stepbot"));
+        assertSame(steps, registry.find("/STEPS@STEPBOT"));
+        assertNull(registry.find("/start@OtherBot"));
+        assertNull(registry.find("/start@StepBot2"));
+        assertNull(registry.find("/stop@StepBot"));
+        assertTrue(registry.isForOtherBot("/start@OtherBot"));
+        assertTrue(registry.isForOtherBot("/start@"));
+        assertFalse(registry.isForOtherBot("/start@stepBOT"));
+        assertFalse(registry.isForOtherBot("/start"));
+    }
+
+    @Test
+    void anyBotNameIsAcceptedWhenUsernameIsNotSet() {
+        CommandRegistry registry = new CommandRegistry(List.of(start), "");
+
+        assertSame(start, registry.find("/start@OtherBot"));
+        assertSame(start, registry.find("/begin@"));
+        assertFalse(registry.isForOtherBot("/start@OtherBot"));
+    }
+
+    @Test
+    void duplicateNamesAreRejected() {
+        assertThrows(IllegalStateException.class,
+                () -> new CommandRegistry(List.of(start, command("/START")), ""));
+        assertThrows(IllegalStateException.class,
+                () -> new CommandRegistry(List.of(start, command("/go", "/Begin")), ""));
+        assertThrows(IllegalStateException.class,
+                () -> new CommandRegistry(List.of(command("/go", "/go")), ""));
+    }
+
+    @Test
+    void manyCommandsAreAllFound() {
+        List<Command> many = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            many.add(command("/c" + i, "/alias" + i));
+        }
+        CommandRegistry registry = new CommandRegistry(many, "bot");
+
+        for (int i = 0; i < 100; i++) {
+            assertSame(many.get(i), registry.find("/C" + i));
+            assertSame(many.get(i), registry.find("/alias" + i + "@Bot"));
+        }
+        assertNull(registry.find("/c100"));
+    }
+}
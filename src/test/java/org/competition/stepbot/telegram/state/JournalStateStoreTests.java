@@ -0,0 +1,146 @@
+package org.competition.stepbot.telegram.state;
+
+import org.competition.stepbot.telegram.commands.Command;
+import org.competition.stepbot.telegram.commands.CommandRegistry;
+import org.competition.stepbot.telegram.commands.CommandResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Mono;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JournalStateStoreTests {
+
+    private static Command command(String name) {
+        return new Command() {
+            @Override
+            public Mono<CommandResult> run(long chatId) {
+                return Mono.empty();
+            }
+
+            @Override
+            public String name() {
+                return name;
+            }
+        };
+    }
+
+    private final Command join = command("/join");
+    private final Command steps = command("/steps");
+    private final CommandRegistry registry = new CommandRegistry(List.of(join, steps), "");
+
+    @Test
+    void stateSurvivesRestart(@TempDir Path dir) throws Exception {
+        JournalStateStore store = new JournalStateStore(registry, dir);
+        store.put(1, join);
+        store.put(2, steps);
+        store.put(1, steps);
+        store.remove(2);
+        store.close();
+
+        JournalStateStore restarted = new JournalStateStore(registry, dir);
+        assertSame(steps, restarted.get(1));
+        assertNull(restarted.get(2));
+        assertEquals(1, restarted.size());
+        restarted.close();
+    }
+
+    @Test
+    void tornRecordAtTheEndIsDropped(@TempDir Path dir) throws Exception {
+        JournalStateStore store = new JournalStateStore(registry, dir);
+        store.put(1, join);
+        store.put(2, steps);
+        store.close();
+
+        Path journal = dir.resolve("conversation.journal");
+        try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        JournalStateStore restarted = new JournalStateStore(registry, dir);
+        assertSame(join, restarted.get(1));
+        assertNull(restarted.get(2));
+        restarted.put(3, steps); // после обрезки журнал снова пригоден для записи
+        restarted.close();
+
+        assertSame(steps, new JournalStateStore(registry, dir).get(3));
+    }
+
+    @Test
+    void compactionKeepsOnlyLiveDialogs(@TempDir Path dir) throws Exception {
+        JournalStateStore store = new JournalStateStore(registry, dir);
+        for (int i = 0; i < 5000; i++) {
+            store.put(i, join);
+            store.remove(i);
+        }
+        store.put(42, steps);
+        store.flush(); // сжатие
+        store.put(43, join);
+        store.close();
+
+        JournalStateStore restarted = new JournalStateStore(registry, dir);
+        assertEquals(2, restarted.size());
+        assertSame(steps, restarted.get(42));
+        assertSame(join, restarted.get(43));
+        assertTrue(dir.resolve("conversation.journal").toFile().length() < 100);
+        restarted.close();
+    }
+
+    @Test
+    void failedWriteKeepsRecordsForNextFlush(@TempDir Path dir) throws Exception {
+        JournalStateStore store = new JournalStateStore(registry, dir);
+        store.put(1, join);
+        store.flush();
+        store.put(2, steps);
+
+        // Прерванный поток закрывает канал прямо во время записи (ClosedByInterruptException)
+        Thread.currentThread().interrupt();
+        try {
+            store.flush();
+        } finally {
+            Thread.interrupted();
+        }
+        store.put(3, join);
+        store.flush(); // журнал открывается заново, и записи 2 и 3 дописываются
+        store.close();
+
+        JournalStateStore restarted = new JournalStateStore(registry, dir);
+        assertSame(join, restarted.get(1));
+        assertSame(steps, restarted.get(2));
+        assertSame(join, restarted.get(3));
+        restarted.close();
+    }
+
+    @Test
+    void failedCompactionFallsBackToAppendAndIsRetried(@TempDir Path dir) throws Exception {
+        Path tmp = dir.resolve("conversation.journal.tmp");
+        Files.createDirectories(tmp); // вместо временного файла каталог, поэтому сжатие не удаётся
+        JournalStateStore store = new JournalStateStore(registry, dir);
+        for (int i = 0; i < 5000; i++) {
+            store.put(i, join);
+            store.remove(i);
+        }
+        store.put(42, steps);
+        store.flush();
+        store.put(43, join);
+        store.close();
+
+        JournalStateStore restarted = new JournalStateStore(registry, dir);
+        assertEquals(2, restarted.size());
+        assertSame(steps, restarted.get(42));
+        assertSame(join, restarted.get(43));
+
+        Files.delete(tmp);
+        restarted.flush(); // теперь сжатие удаётся
+        restarted.put(44, steps);
+        restarted.close();
+        assertTrue(dir.resolve("conversation.journal").toFile().length() < 100);
+        assertEquals(3, new JournalStateStore(registry, dir).size());
+    }
+}
@@ -0,0 +1,183 @@
+package org.competition.stepbot.telegram.state;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.competition.stepbot.metrics.BotMetrics;
+import org.competition.stepbot.telegram.ChatMailboxes;
+import org.competition.stepbot.telegram.StubTelegramServer;
+import org.competition.stepbot.telegram.TelegramBot;
+import org.competition.stepbot.telegram.commands.Command;
+import org.competition.stepbot.telegram.commands.CommandResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionExpiryTests {
+    private static final long TICK_MS = 10;
+
+    private StubTelegramServer stub;
+    private TelegramBot telegramBot;
+    private InMemoryStateStore stateStore;
+    private ChatMailboxes chatMailboxes;
+
+    /// Диалог, который завершается после ticks тиков без сообщений
+    private record Dialog(int ticks) implements Command {
+        @Override
+        public Mono<CommandResult> run(long chatId) {
+            return Mono.just(CommandResult.nextStep(this));
+        }
+
+        @Override
+        public String name() {
+            return "/dialog";
+        }
+
+        @Override
+        public Duration idleTimeout() {
+            return Duration.ofMillis(ticks * TICK_MS);
+        }
+
+        @Override
+        public String expiryNotice() {
+            return "expired";
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        stub = new StubTelegramServer().on("sendMessage", body -> Mono.just(Map.of(
+                "message_id", 1,
+                "text", body.path("text").asText(),
+                "chat", Map.of("id", body.path("chat_id").asLong()))));
+        telegramBot = stub.telegramBot(new BotMetrics(new SimpleMeterRegistry()));
+        stateStore = new InMemoryStateStore();
+        chatMailboxes = new ChatMailboxes(16, ChatMailboxes.OverflowPolicy.REJECT_NEW);
+    }
+
+    @AfterEach
+    void tearDown() {
+        stub.close();
+    }
+
+    @Test
+    void idleDialogIsExpiredWithNotice() throws Exception {
+        SessionExpiry expiry = expiry(8, true);
+        start(expiry, 100, new Dialog(3));
+
+        expiry.tick();
+        expiry.tick();
+        assertEquals(1, expiry.trackedSessions());
+        assertNotNull(stateStore.get(100));
+
+        expiry.tick();
+        StubTelegramServer.Request notice = stub.requests().poll(5, TimeUnit.SECONDS);
+        assertNotNull(notice, "Expiry notice was not sent");
+        assertEquals("expired", notice.body().path("text").asText());
+        assertEquals(100, notice.body().path("chat_id").asLong());
+        assertNull(stateStore.get(100));
+        assertEquals(0, expiry.trackedSessions());
+    }
+
+    @Test
+    void newStepExtendsDeadline() {
+        SessionExpiry expiry = expiry(4, false);
+        Dialog dialog = new Dialog(4); // срок — целый оборот колеса
+        start(expiry, 100, dialog);
+
+        for (int i = 0; i < 3; i++) {
+            expiry.tick();
+        }
+        expiry.onStateUpdate(100, CommandResult.nextStep(dialog)); // сообщение за тик до срока
+        for (int i = 0; i < 3; i++) {
+            expiry.tick();
+        }
+        assertEquals(1, expiry.trackedSessions(), "Extended dialog must not expire at the old deadline");
+        assertNotNull(stateStore.get(100));
+
+        expiry.tick();
+        await(() -> stateStore.get(100) == null);
+        assertEquals(0, expiry.trackedSessions());
+
+        start(expiry, 200, dialog);
+        expiry.onStateUpdate(200, CommandResult.finish(dialog));
+        assertEquals(0, expiry.trackedSessions(), "Finished dialog must not be tracked");
+    }
+
+    @Test
+    void restoredDialogsAreScheduled() {
+        stateStore.put(1, new Dialog(2));
+        stateStore.put(2, new Dialog(5));
+        SessionExpiry expiry = expiry(8, false);
+        expiry.scheduleRestored();
+        assertEquals(2, expiry.trackedSessions());
+
+        expiry.tick();
+        expiry.tick();
+        await(() -> stateStore.get(1) == null);
+        assertNotNull(stateStore.get(2));
+
+        for (int i = 0; i < 3; i++) {
+            expiry.tick();
+        }
+        await(() -> stateStore.size() == 0);
+    }
+
+    @Test
+    void dialogExtendedWhileItsSlotIsProcessedStillExpires() throws Exception {
+        // Срок на целый оборот колеса всегда попадает в ячейку, которую сейчас обрабатывает tick()
+        SessionExpiry expiry = expiry(4, false);
+        Dialog dialog = new Dialog(4);
+        for (long chatId = 0; chatId < 64; chatId++) {
+            start(expiry, chatId, dialog);
+        }
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread toucher = new Thread(() -> {
+            while (running.get()) {
+                for (long chatId = 0; chatId < 64; chatId++) {
+                    expiry.onStateUpdate(chatId, CommandResult.nextStep(dialog));
+                }
+            }
+        });
+        toucher.start();
+        for (int i = 0; i < 20_000; i++) {
+            expiry.tick();
+        }
+        running.set(false);
+        toucher.join();
+
+        for (int i = 0; i < 5; i++) {
+            expiry.tick();
+        }
+        assertEquals(0, expiry.trackedSessions(), "Every dialog must expire after the last message");
+        await(() -> stateStore.size() == 0);
+    }
+
+    private SessionExpiry expiry(int wheelSize, boolean notify) {
+        return new SessionExpiry(stateStore, chatMailboxes, telegramBot, Duration.ofMinutes(30), TICK_MS, wheelSize,
+                notify);
+    }
+
+    /// Начинает диалог в чате, как это делает MessageHandler после шага команды
+    private void start(SessionExpiry expiry, long chatId, Dialog dialog) {
+        stateStore.put(chatId, dialog);
+        expiry.onStateUpdate(chatId, CommandResult.nextStep(dialog));
+    }
+
+    /// Ждёт условия: диалог завершается асинхронно, через очередь чата
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Condition is not met in time");
+            Thread.onSpinWait();
+        }
+    }
+}